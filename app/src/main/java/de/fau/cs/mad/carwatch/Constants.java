@@ -48,6 +48,13 @@ public final class Constants {
     public static final String PREF_EVENING_SALIVA_ID = "evening_saliva_id"; // int
     public static final String PREF_TIMER_NOTIFICATION_IS_SHOWN = "timer_notification_is_shown"; // boolean
     public static final String PREF_LAST_WAKE_UP_ALARM_RING_TIME = "last_wake_up_alarm_ring_time"; // long (milliseconds from epoch)
+    public static final String PREF_NOTIFICATION_CHANNELS_VERSION = "notification_channels_version"; // int (app version code)
+    public static final String PREF_WAKE_LOCK_DAY = "wake_lock_day"; // String (yyyy-MM-dd)
+    public static final String PREF_WAKE_LOCK_TOTAL_TIME = "wake_lock_total_time"; // long (ms)
+    public static final String PREF_WAKE_LOCK_MAX_TIME = "wake_lock_max_time"; // long (ms)
+    public static final String PREF_WAKE_LOCK_NUM_SECTIONS = "wake_lock_num_sections"; // int
+    public static final String PREF_WAKE_LOCK_NUM_TIMEOUTS = "wake_lock_num_timeouts"; // int
+    public static final String PREF_ALARM_ESCALATION_DURATION = "alarm_escalation_duration"; // long (ms, 0 = full volume right away)
 
     public static final int INITIAL_SLIDE_SHOW_SLIDE = 0;
     public static final int SLIDESHOW_FINISHED_SLIDE_ID = -1;
@@ -64,6 +71,8 @@ public final class Constants {
     public static final String EXTRA_SALIVA_ID = "extra_saliva_id";
     public static final String EXTRA_CANCEL_ALARM = "extra_cancel_alarm";
     public static final String EXTRA_SOURCE = "extra_source";
+    public static final String EXTRA_PLANNED_TRIGGER_TIME = "extra_planned_trigger_time";
+    public static final String EXTRA_SCHEDULE_STRATEGY = "extra_schedule_strategy";
     public static final String EXTRA_SHOW_BARCODE_SCANNED_MSG = "extra_show_barcode_scanned_msg";
     public static final String EXTRA_SALIVA_ID_MANUAL_HR = "M";
     public static final String EXTRA_SALIVA_ID_EVENING = "A";
@@ -80,6 +89,13 @@ public final class Constants {
 
     public static final String ACTION_STOP_ALARM = "Stop Alarm";
 
+    public static final long ALARM_ESCALATION_DEFAULT_DURATION = 60_000;
+    public static final int ALARM_ESCALATION_NUM_STEPS = 6;
+    public static final float ALARM_ESCALATION_START_VOLUME = 0.2f;
+    public static final int ALARM_ESCALATION_START_AMPLITUDE = 64;
+    public static final long ALARM_RERING_WINDOW = 15 * 60 * 1000;
+    public static final long WAKE_LOCK_TIMEOUT = 10_000;
+
     public static final String BARCODE_TYPE_EAN8 = "ean8";
     public static final String BARCODE_TYPE_QR = "qr";
 
@@ -90,13 +106,22 @@ public final class Constants {
     public static final String LOGGER_ACTION_TIMER_SET = "timer_set";
     public static final String LOGGER_ACTION_ALARM_CANCEL = "alarm_cancel";
     public static final String LOGGER_ACTION_ALARM_RING = "alarm_ring";
+    public static final String LOGGER_ACTION_TIMER_RING = "timer_ring";
     public static final String LOGGER_ACTION_ALARM_STOP = "alarm_stop";
     public static final String LOGGER_ACTION_ALARM_KILLALL = "alarm_killall";
+    public static final String LOGGER_ACTION_ALARM_SCHEDULE_BATCH = "alarm_schedule_batch";
+    public static final String LOGGER_ACTION_ALARM_ESCALATION = "alarm_escalation";
+    public static final String LOGGER_ACTION_WAKE_LOCK_SUMMARY = "wake_lock_summary";
     public static final String LOGGER_ACTION_EVENING_SALIVETTE = "evening_salivette";
     public static final String LOGGER_ACTION_BARCODE_SCAN_INIT = "barcode_scan_init";
     public static final String LOGGER_ACTION_BARCODE_SCANNED = "barcode_scanned";
     public static final String LOGGER_ACTION_INVALID_BARCODE_SCANNED = "invalid_barcode_scanned";
     public static final String LOGGER_ACTION_DUPLICATE_BARCODE_SCANNED = "duplicate_barcode_scanned";
+    public static final String LOGGER_ACTION_BARCODE_CONSENSUS = "barcode_consensus";
+    public static final String LOGGER_ACTION_SCANNER_FIRST_FRAME = "scanner_first_frame";
+    public static final String LOGGER_ACTION_SCANNER_LIGHTING = "scanner_lighting";
+    public static final String LOGGER_ACTION_SCANNER_PAUSED = "scanner_paused";
+    public static final String LOGGER_ACTION_SCANNER_RESUMED = "scanner_resumed";
     public static final String LOGGER_ACTION_SPONTANEOUS_AWAKENING = "spontaneous_awakening";
     public static final String LOGGER_ACTION_LIGHTS_OUT = "lights_out";
     public static final String LOGGER_ACTION_LIGHTS_ON = "lights_on";
@@ -118,8 +143,31 @@ public final class Constants {
     public static final String LOGGER_TRANSLATED_TIMESTAMP = "translated_timestamp"; // String (time in format "EE MMM dd yyyy HH:mm:ss ZZ")
     public static final String LOGGER_EXTRA_ALARM_SOURCE = "source"; // int
     public static final String LOGGER_EXTRA_SALIVA_ID = "saliva_id"; // int
+    public static final String LOGGER_EXTRA_NUM_ALARMS = "num_alarms"; // int
+    public static final String LOGGER_EXTRA_NUM_IPC_CALLS = "num_ipc_calls"; // int
+    public static final String LOGGER_EXTRA_SOUND_LATENCY = "sound_latency"; // long (ms)
+    public static final String LOGGER_EXTRA_FIRE_DELAY = "fire_delay"; // long (ms)
+    public static final String LOGGER_EXTRA_SCHEDULE_STRATEGY = "schedule_strategy"; // String
+    public static final String LOGGER_EXTRA_ESCALATION_STEP = "escalation_step"; // int
+    public static final String LOGGER_EXTRA_VOLUME = "volume"; // float (0-1)
+    public static final String LOGGER_EXTRA_VIBRATION_AMPLITUDE = "vibration_amplitude"; // int (1-255)
+    public static final String LOGGER_EXTRA_RERING = "rering"; // boolean
     public static final String LOGGER_EXTRA_BARCODE_VALUE = "barcode_value"; // String
     public static final String LOGGER_EXTRA_OTHER_BARCODES = "other_barcodes"; // String Set
+    public static final String LOGGER_EXTRA_NUM_FRAMES = "num_frames"; // int
+    public static final String LOGGER_EXTRA_VOTE_THRESHOLD = "vote_threshold"; // int
+    public static final String LOGGER_EXTRA_WARM_START = "warm_start"; // boolean
+    public static final String LOGGER_EXTRA_TIME_TO_FIRST_FRAME = "time_to_first_frame"; // long (ms)
+    public static final String LOGGER_EXTRA_MEAN_LUMINANCE = "mean_luminance"; // int (0-255)
+    public static final String LOGGER_EXTRA_MIN_LUMINANCE = "min_luminance"; // int (0-255)
+    public static final String LOGGER_EXTRA_EXPOSURE_FRAME = "exposure_raised_frame"; // int
+    public static final String LOGGER_EXTRA_TORCH_FRAME = "torch_enabled_frame"; // int
+    public static final String LOGGER_EXTRA_PAUSE_REASON = "pause_reason"; // String
+    public static final String LOGGER_EXTRA_DURATION = "duration"; // long (ms)
+    public static final String LOGGER_EXTRA_MAX_DURATION = "max_duration"; // long (ms)
+    public static final String LOGGER_EXTRA_DAY = "day"; // String (yyyy-MM-dd)
+    public static final String LOGGER_EXTRA_NUM_SECTIONS = "num_sections"; // int
+    public static final String LOGGER_EXTRA_NUM_TIMEOUTS = "num_timeouts"; // int
     public static final String LOGGER_EXTRA_DAY_COUNTER = "day_counter"; // int
     public static final String LOGGER_EXTRA_PARTICIPANT_ID = "participant_id"; // String
     public static final String LOGGER_EXTRA_SCANNED_DAY = "day_scanned"; // int
@@ -154,6 +202,7 @@ public final class Constants {
     public static final String QR_PARSER_PROPERTY_CONTACT = "M";
     public static final String QR_PARSER_PROPERTY_DUPLICATES = "FD";
     public static final String QR_PARSER_PROPERTY_PARTICIPANT_ID = "PID";
+    public static final String QR_PARSER_PROPERTY_ALARM_ESCALATION = "AE"; // optional, seconds
     public static final String QR_PARSER_PROPERTY_WEB_APP_VERSION = "V";
 
     public static final String LOGGER_EXTRA_STUDY_NAME = "study_name";
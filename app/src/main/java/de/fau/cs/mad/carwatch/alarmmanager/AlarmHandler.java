@@ -1,16 +1,11 @@
 package de.fau.cs.mad.carwatch.alarmmanager;
 
-import android.app.AlarmManager;
 import android.app.Application;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.os.Build;
 import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.View;
 
 import androidx.annotation.NonNull;
@@ -19,7 +14,6 @@ import androidx.preference.PreferenceManager;
 import com.google.android.material.snackbar.Snackbar;
 
 import org.joda.time.DateTime;
-import org.joda.time.LocalTime;
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormatter;
 import org.joda.time.format.PeriodFormatterBuilder;
@@ -35,8 +29,6 @@ import de.fau.cs.mad.carwatch.Constants;
 import de.fau.cs.mad.carwatch.R;
 import de.fau.cs.mad.carwatch.db.Alarm;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
-import de.fau.cs.mad.carwatch.ui.MainActivity;
-import de.fau.cs.mad.carwatch.userpresent.BootCompletedReceiver;
 import de.fau.cs.mad.carwatch.util.AlarmRepository;
 import de.fau.cs.mad.carwatch.util.Utils;
 
@@ -94,9 +86,14 @@ public class AlarmHandler {
         if (!alarm.isActive())
             return;
 
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-
-        if (alarmManager == null) {
+        int alarmId = alarm.getId();
+        DateTime nextRing = alarm.getTimeToNextRing();
+        // logged once the alarm is registered, which is deferred while a batch is active
+        Runnable onScheduled = () -> {
+            logAlarmSet(alarmId, nextRing);
+            showAlarmSetMessage(context, snackBarAnchor, nextRing);
+        };
+        if (!AlarmScheduler.schedule(context, alarmId, alarm.getSalivaId(), nextRing.getMillis(), onScheduled)) {
             alarm.setActive(false);
             if (snackBarAnchor != null) {
                 Snackbar.make(snackBarAnchor, context.getString(R.string.alarm_set_error), Snackbar.LENGTH_SHORT).show();
@@ -104,26 +101,82 @@ public class AlarmHandler {
             return;
         }
 
-        PendingIntent showIntent = getPendingIntentShow(context, alarm);
-        PendingIntent operation = getPendingIntent(context, alarm);
-
-        AlarmManager.AlarmClockInfo info = new AlarmManager.AlarmClockInfo(alarm.getTimeToNextRing().getMillis(), showIntent);
-        alarmManager.setAlarmClock(info, operation);
-
-        setBootCompletedReceiverEnabledSetting(context, true);
-
-        logAlarmSet(alarm, alarm.getTimeToNextRing());
-        showAlarmSetMessage(context, snackBarAnchor, alarm.getTimeToNextRing());
+        AlarmTone.preload(context);
     }
 
     /**
-     * deletes and re-schedules all saliva alarms with relative and fixed times except for the wake-up alarm
+     * re-schedules all saliva alarms with relative and fixed times except for the wake-up alarm,
+     * only alarms that differ from the new day plan are changed
      *
      * @param context Context to use
      */
     public static void rescheduleSalivaAlarms(Context context) {
-        deleteSalivaAlarms(context);
-        scheduleSalivaAlarms(context);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SchedulePlanner planner = new SchedulePlanner(
+                sp.getString(Constants.PREF_SALIVA_DISTANCES, ""),
+                sp.getString(Constants.PREF_SALIVA_TIMES, ""));
+        List<SchedulePlanner.PlannedAlarm> plan = planner.plan(DateTime.now());
+
+        AlarmRepository repository = AlarmRepository.getInstance(context);
+        AlarmScheduler.beginBatch();
+        try {
+            List<Alarm> alarms = repository.getAll();
+            SalivaScheduleExecutor.apply(context, repository, alarms != null ? alarms : new ArrayList<>(), plan);
+        } catch (ExecutionException | InterruptedException e) {
+            Log.d(TAG, "Could not reschedule saliva alarms: failed to get alarms from database");
+            e.printStackTrace();
+        } finally {
+            AlarmScheduler.endBatch(context);
+        }
+        AlarmTone.preload(context);
+    }
+
+    /**
+     * Brings the AlarmManager in line with the given alarms: registers active alarms that are not
+     * registered yet or whose ring time changed, and cancels alarms that are no longer active.
+     * Alarms that are already registered as desired are not touched, so calling this repeatedly
+     * (e.g., on every change of the alarm table) is cheap.
+     *
+     * @param alarms all alarms in the database
+     */
+    public static void reconcileAlarms(Context context, List<Alarm> alarms) {
+        int numScheduled = 0;
+        int numCancelled = 0;
+        SparseBooleanArray knownIds = new SparseBooleanArray(alarms.size());
+
+        AlarmScheduler.beginBatch();
+        for (Alarm alarm : alarms) {
+            knownIds.put(alarm.getId(), true);
+            if (!alarm.isActive()) {
+                if (AlarmRegistry.isRegistered(context, alarm.getId())) {
+                    cancelAlarm(context, alarm, null);
+                    numCancelled++;
+                }
+                continue;
+            }
+            if (AlarmRegistry.isRegistered(context, alarm.getId(), alarm.getTimeToNextRing().getMillis()))
+                continue;
+
+            if (alarm.getId() == Constants.EXTRA_ALARM_ID_INITIAL) {
+                scheduleWakeUpAlarm(context, alarm);
+            } else {
+                scheduleSalivaAlarm(context, alarm, null);
+            }
+            numScheduled++;
+        }
+
+        // alarms that were deleted from the database while still registered
+        for (int alarmId : AlarmRegistry.getRegisteredIds(context)) {
+            if (!knownIds.get(alarmId)) {
+                Alarm alarm = new Alarm();
+                alarm.setId(alarmId);
+                cancelAlarm(context, alarm, null);
+                numCancelled++;
+            }
+        }
+        AlarmScheduler.endBatch(context);
+
+        Log.d(TAG, "Reconciled alarms: " + numScheduled + " scheduled, " + numCancelled + " cancelled");
     }
 
     public static void showMessageSalivaAlarmsScheduled(Context context, View anchor) {
@@ -147,34 +200,27 @@ public class AlarmHandler {
             return;
 
         DateTime alarmTime = alarm.getTimeToNextRing();
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-
-        if (alarmManager == null) {
-            Log.e(TAG, "Could not set alarm with id: " + alarm.getId() + " at " + alarmTime.getMillis() + " because alarmManager is null");
-            return;
-        }
-
-        PendingIntent showIntent = getPendingIntentShow(context, alarm);
-        PendingIntent subsequentOperation = getPendingIntent(context, alarm);
 
-        Log.d(TAG, "Setting timed alarm " + alarm.getId() + " at " + alarmTime);
-        AlarmManager.AlarmClockInfo info = new AlarmManager.AlarmClockInfo(alarmTime.getMillis(), showIntent);
-        alarmManager.setAlarmClock(info, subsequentOperation);
-
-        setBootCompletedReceiverEnabledSetting(context, true);
+        int alarmId = alarm.getId();
+        Log.d(TAG, "Setting timed alarm " + alarmId + " at " + alarmTime);
+        // logged once the alarm is registered, which is deferred while a batch is active
+        Runnable onScheduled = () -> {
+            try {
+                // create Json object and log information
+                JSONObject json = new JSONObject();
+                json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarmId);
+                json.put(Constants.LOGGER_EXTRA_ALARM_TIMESTAMP, alarmTime.getMillis());
+                json.put(Constants.LOGGER_TRANSLATED_TIMESTAMP, Utils.translateTimestamp(alarmTime.getMillis()));
+                LoggerUtil.log(Constants.LOGGER_ACTION_TIMER_SET, json);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
 
-        try {
-            // create Json object and log information
-            JSONObject json = new JSONObject();
-            json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarm.getId());
-            json.put(Constants.LOGGER_EXTRA_ALARM_TIMESTAMP, alarmTime.getMillis());
-            json.put(Constants.LOGGER_TRANSLATED_TIMESTAMP, Utils.translateTimestamp(alarmTime.getMillis()));
-            LoggerUtil.log(Constants.LOGGER_ACTION_TIMER_SET, json);
-        } catch (JSONException e) {
-            e.printStackTrace();
+            showAlarmSetMessage(context, snackbarAnchor, alarmTime);
+        };
+        if (!AlarmScheduler.schedule(context, alarmId, alarm.getSalivaId(), alarmTime.getMillis(), onScheduled)) {
+            Log.e(TAG, "Could not set alarm with id: " + alarmId + " at " + alarmTime.getMillis() + " because alarmManager is null");
         }
-
-        showAlarmSetMessage(context, snackbarAnchor, alarmTime);
     }
 
     /**
@@ -183,21 +229,7 @@ public class AlarmHandler {
      * @param alarm Alarm to cancel
      */
     public static void cancelAlarm(Context context, Alarm alarm, View snackBarAnchor) {
-        // Get PendingIntent to AlarmReceiver Broadcast channel
-        Intent intent = new Intent(context, AlarmReceiver.class);
-
-        int pendingFlags;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            pendingFlags = PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE;
-        } else {
-            pendingFlags = PendingIntent.FLAG_NO_CREATE;
-        }
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, alarm.getId(), intent, pendingFlags);
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-
-        if (alarmManager == null || pendingIntent == null)
-            // PendingIntent may be null if the alarm hasn't been set
+        if (!AlarmScheduler.cancel(context, alarm.getId()))
             return;
 
         try {
@@ -209,8 +241,6 @@ public class AlarmHandler {
             e.printStackTrace();
         }
 
-        alarmManager.cancel(pendingIntent);
-
         AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
         List<Alarm> alarms = repository.getAlarms().getValue();
         boolean enabledAlarmRemains = false;
@@ -226,7 +256,7 @@ public class AlarmHandler {
         }
 
         if (!enabledAlarmRemains)
-            setBootCompletedReceiverEnabledSetting(context, false);
+            AlarmScheduler.setBootReceiverEnabled(context, false);
 
         if (snackBarAnchor != null) {
             // Show snackbar to notify user
@@ -234,136 +264,16 @@ public class AlarmHandler {
         }
     }
 
-    private static void deleteSalivaAlarms(Context context) {
-        AlarmRepository repository = AlarmRepository.getInstance(context);
-
-        try {
-            List<Alarm> alarms = repository.getAll();
-
-            if (alarms == null)
-                return;
-
-            for (Alarm alarm : alarms) {
-                if (alarm.getId() == Constants.EXTRA_ALARM_ID_INITIAL)
-                    continue;
-                alarm.setActive(false);
-                cancelAlarm(context, alarm, null);
-                repository.delete(alarm);
-                Log.d(TAG, "Deleted saliva alarm " + alarm.getId());
-            }
-
-            // reset alarm id counter
-            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-            sp.edit().putInt(Constants.PREF_CURRENT_ALARM_ID, Constants.EXTRA_ALARM_ID_INITIAL + 1).apply();
-        } catch (ExecutionException | InterruptedException e) {
-            Log.d(TAG, "Could not delete yesterdays saliva alarms: failed to get alarms from database");
-            e.printStackTrace();
-        }
-    }
-
-    private static void scheduleSalivaAlarms(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        AlarmRepository repo = AlarmRepository.getInstance((Application) context.getApplicationContext());
-
-        String fixedTimesString = sp.getString(Constants.PREF_SALIVA_TIMES, "");
-        String timeDistancesString = sp.getString(Constants.PREF_SALIVA_DISTANCES, "");
-        String[] timeDistances = timeDistancesString.split(",");
-        List<DateTime> alarmTimes = new ArrayList<>();
-        List<Boolean> isFixed = new ArrayList<>();
-        DateTime lastAlarmTime = DateTime.now();
-
-        for (String distanceString : timeDistances) {
-            if (distanceString.isEmpty() || distanceString.equals("0"))
-                continue;
-            int distance = Integer.parseInt(distanceString);
-            lastAlarmTime = lastAlarmTime.plusMinutes(distance);
-            alarmTimes.add(lastAlarmTime);
-            isFixed.add(false);
-        }
-
-        for (String timeRaw : fixedTimesString.split(",")) {
-            if (timeRaw.isEmpty())
-                continue;
-            String time = timeRaw.substring(0, 2) + ":" + timeRaw.substring(2);
-            alarmTimes.add(DateTime.now().withTime(LocalTime.parse(time)));
-            isFixed.add(true);
-        }
-
-        int id = sp.getInt(Constants.PREF_CURRENT_ALARM_ID, 1);
-        int salivaId = Constants.EXTRA_SALIVA_ID_INITIAL;
-        if (timeDistancesString.startsWith("0"))
-            // if first sample request has no offset, it was already scheduled with the first alarm
-            salivaId++;
-
-        for (int i = 0; i < alarmTimes.size(); i++) {
-            Alarm alarm = new Alarm(alarmTimes.get(i), true, isFixed.get(i), id++, salivaId++, false);
-            repo.insert(alarm);
-            AlarmHandler.scheduleSalivaAlarm(context, alarm, null);
-        }
-        sp.edit().putInt(Constants.PREF_CURRENT_ALARM_ID, id).apply();
-    }
-
     private static void cancelAlarmAtTime(Context context, int alarmId) {
-        // Get PendingIntent to AlarmReceiver Broadcast channel
-        Intent intent = new Intent(context, AlarmReceiver.class);
-
-        int pendingFlags;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            pendingFlags = PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE;
-        } else {
-            pendingFlags = PendingIntent.FLAG_NO_CREATE;
-        }
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, alarmId, intent, pendingFlags);
-
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-
         Log.d(TAG, "Cancelling alarm " + alarmId);
-        Log.d(TAG, "Cancelling alarm " + pendingIntent);
-
-        // PendingIntent may be null if the alarm hasn't been set
-        if (alarmManager != null && pendingIntent != null) {
-            alarmManager.cancel(pendingIntent);
-        }
+        AlarmScheduler.cancel(context, alarmId);
 
+        NotificationManager notificationManager = AlarmScheduler.getNotificationManager(context);
         if (notificationManager != null) {
             notificationManager.cancel(alarmId);
         }
     }
 
-    private static PendingIntent getPendingIntent(Context context, Alarm alarm) {
-        Intent intent = new Intent(context, AlarmReceiver.class);
-        intent.putExtra(Constants.EXTRA_ALARM_ID, alarm.getId());
-
-        return PendingIntent.getBroadcast(context, alarm.getId(), intent, getPendingIntentFlags());
-    }
-
-    private static PendingIntent getPendingIntentShow(Context context, Alarm alarm) {
-        Intent intent = new Intent(context, MainActivity.class);
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        intent.putExtra(Constants.EXTRA_ALARM_ID, alarm.getId());
-
-        return PendingIntent.getActivity(
-                context,
-                Constants.REQUEST_CODE_ALARM_ACTIVITY,
-                intent,
-                getPendingIntentFlags());
-    }
-
-    private static int getPendingIntentFlags() {
-        int pendingFlags = PendingIntent.FLAG_UPDATE_CURRENT;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
-            pendingFlags |= PendingIntent.FLAG_IMMUTABLE;
-        return pendingFlags;
-    }
-
-    private static void setBootCompletedReceiverEnabledSetting(Context context, boolean setEnabled) {
-        int flag = setEnabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED : PackageManager.COMPONENT_ENABLED_STATE_DISABLED;
-        ComponentName receiver = new ComponentName(context, BootCompletedReceiver.class);
-        PackageManager pm = context.getPackageManager();
-        pm.setComponentEnabledSetting(receiver, flag, PackageManager.DONT_KILL_APP);
-    }
-
     private static String createTimeDiffString(DateTime nextRingTime) {
         Period timeDiff = new Period(DateTime.now(), nextRingTime);
         String timeDiffString = formatter.print(timeDiff);
@@ -378,11 +288,11 @@ public class AlarmHandler {
         }
     }
 
-    private static void logAlarmSet(Alarm alarm, DateTime nextRing) {
+    private static void logAlarmSet(int alarmId, DateTime nextRing) {
         try {
             // create Json object and log information
             JSONObject json = new JSONObject();
-            json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarm.getId());
+            json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarmId);
             json.put(Constants.LOGGER_EXTRA_ALARM_TIMESTAMP, nextRing.getMillis());
             json.put(Constants.LOGGER_TRANSLATED_TIMESTAMP, Utils.translateTimestamp(nextRing.getMillis()));
 
@@ -1,97 +1,153 @@
 package de.fau.cs.mad.carwatch.alarmmanager;
 
-import android.annotation.SuppressLint;
 import android.app.Application;
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationCompat;
 
+import com.google.mlkit.vision.barcode.common.Barcode;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import de.fau.cs.mad.carwatch.Constants;
 import de.fau.cs.mad.carwatch.R;
+import de.fau.cs.mad.carwatch.barcodedetection.ScannerWarmup;
 import de.fau.cs.mad.carwatch.db.Alarm;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.ui.ShowAlarmActivity;
 import de.fau.cs.mad.carwatch.userpresent.UserPresentService;
 import de.fau.cs.mad.carwatch.util.AlarmRepository;
-
-import static android.os.Build.VERSION;
-import static android.os.Build.VERSION_CODES;
+import de.fau.cs.mad.carwatch.util.NotificationChannels;
 
 public class AlarmReceiver extends BroadcastReceiver {
 
     private static final String TAG = AlarmReceiver.class.getSimpleName();
-    private final String CHANNEL_ID = TAG + "Channel";
+    private static final Executor backgroundExecutor = Executors.newSingleThreadExecutor();
+    private static final long SOUND_START_TIMEOUT_MS = 5000;
 
-    @SuppressLint("WrongConstant")
     @Override
     public void onReceive(Context context, Intent intent) {
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        long receiveTime = SystemClock.elapsedRealtime();
+        long fireTime = System.currentTimeMillis();
+        // held until the background work below is done
+        WakeLockManager.Section wakeLock = WakeLockManager.acquire(context, TAG, Constants.WAKE_LOCK_TIMEOUT);
+        int alarmId = intent.getIntExtra(Constants.EXTRA_ALARM_ID, Constants.EXTRA_ALARM_ID_INITIAL);
+
+        // Play alarm ringing sound first, everything else can wait
+        AlarmSoundControl alarmSoundControl = AlarmSoundControl.getInstance();
+        Future<Long> soundStarted = alarmSoundControl.playAlarmSound(context, alarmId);
+
+        // alarms registered by older app versions do not carry the saliva id
+        boolean hasSalivaId = intent.hasExtra(Constants.EXTRA_SALIVA_ID);
+        int salivaId = intent.getIntExtra(Constants.EXTRA_SALIVA_ID, -1);
 
-        // Create and add notification channel
-        if (VERSION.SDK_INT >= VERSION_CODES.O && notificationManager != null) {
-            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, TAG, NotificationManager.IMPORTANCE_MAX);
-            notificationManager.createNotificationChannel(channel);
+        NotificationManager notificationManager = AlarmScheduler.getNotificationManager(context);
+        if (notificationManager != null) {
+            Log.d(TAG, "Displaying notification for alarm " + alarmId);
+            notificationManager.notify(alarmId, buildNotification(context, alarmId, salivaId));
         }
 
+        // Database lookup, logging and stopping the user present service are done in the background
+        PendingResult pendingResult = goAsync();
+        backgroundExecutor.execute(() -> {
+            try {
+                onAlarmRinging(context, intent, alarmId, hasSalivaId ? salivaId : null, fireTime, receiveTime, soundStarted);
+            } finally {
+                pendingResult.finish();
+                wakeLock.release();
+            }
+        });
+    }
+
+    @WorkerThread
+    private void onAlarmRinging(Context context, Intent intent, int alarmId, @Nullable Integer salivaId,
+                                long fireTime, long receiveTime, Future<Long> soundStarted) {
+        // the AlarmManager drops an alarm once it fired; the registry may have to be loaded first,
+        // so this is not done before the sound is started
+        AlarmRegistry.markUnregistered(context, alarmId);
+
         // stop user present service if running
         if (UserPresentService.serviceRunning) {
             UserPresentService.stopService(context);
         }
 
-        int alarmId = intent.getIntExtra(Constants.EXTRA_ALARM_ID, Constants.EXTRA_ALARM_ID_INITIAL);
+        if (salivaId == null) {
+            salivaId = getSalivaId(context, alarmId);
+        }
 
-        AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
-        Alarm alarm;
+        if (salivaId != -1) {
+            // the barcode scanner is opened once the alarm is stopped
+            ScannerWarmup.warmUp(context, Barcode.FORMAT_EAN_8);
+        }
 
+        long soundLatency = -1;
         try {
-            alarm = repository.getAlarmById(alarmId);
-        } catch (ExecutionException | InterruptedException e) {
-            Log.e(TAG, "Error while getting alarm with id " + alarmId + " from database");
-            e.printStackTrace();
-            return;
+            long startTime = soundStarted.get(SOUND_START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (startTime >= 0) {
+                soundLatency = startTime - receiveTime;
+            }
+        } catch (ExecutionException | InterruptedException | TimeoutException e) {
+            Log.e(TAG, "Could not get start time of alarm sound", e);
         }
 
-        Notification notification = buildNotification(context, alarm);
-
-        // Play alarm ringing sound
-        AlarmSoundControl alarmSoundControl = AlarmSoundControl.getInstance();
-        alarmSoundControl.playAlarmSound(context);
-
         try {
             // create Json object and log information
             JSONObject json = new JSONObject();
             json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarmId);
-            json.put(Constants.LOGGER_EXTRA_SALIVA_ID, alarm.getSalivaId());
+            json.put(Constants.LOGGER_EXTRA_SALIVA_ID, salivaId);
+            json.put(Constants.LOGGER_EXTRA_SOUND_LATENCY, soundLatency);
+            ScheduleStrategy.putFireDelay(json, intent, fireTime);
             LoggerUtil.log(Constants.LOGGER_ACTION_ALARM_RING, json);
         } catch (JSONException e) {
             Log.e(TAG, "Error while creating JSON object for logger for alarm with ID " + alarmId);
             e.printStackTrace();
         }
+    }
 
-        if (notificationManager != null) {
-            Log.d(TAG, "Displaying notification for alarm " + alarmId);
-            notificationManager.notify(alarmId, notification);
+    /**
+     * Looks up the saliva id of an alarm in the database, for alarms registered by older app
+     * versions. Returns -1 (no saliva sample) if the alarm can't be found, so that the ringing alarm
+     * is still handled and logged.
+     */
+    @WorkerThread
+    private static int getSalivaId(Context context, int alarmId) {
+        AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
+        try {
+            Alarm alarm = repository.getAlarmById(alarmId);
+            if (alarm != null) {
+                return alarm.getSalivaId();
+            }
+            Log.e(TAG, "Alarm with id " + alarmId + " not found in database");
+        } catch (ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Error while getting alarm with id " + alarmId + " from database");
+            e.printStackTrace();
         }
+        return -1;
     }
 
-    private Notification buildNotification(Context context, Alarm alarm) {
-        PendingIntent stopIntent = createStopAlarmIntent(context, alarm);
+    private Notification buildNotification(Context context, int alarmId, int salivaId) {
+        PendingIntent stopIntent = createStopAlarmIntent(context, alarmId, salivaId);
 
         Intent fullScreenIntent = new Intent(context, ShowAlarmActivity.class);
-        fullScreenIntent.putExtra(Constants.EXTRA_ALARM_ID, alarm.getId());
+        fullScreenIntent.putExtra(Constants.EXTRA_ALARM_ID, alarmId);
 
         int pendingFlags = PendingIntent.FLAG_UPDATE_CURRENT;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
@@ -100,15 +156,7 @@ public class AlarmReceiver extends BroadcastReceiver {
         PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(context, 0,
                 fullScreenIntent, pendingFlags);
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setDefaults(Notification.DEFAULT_ALL)
-                .setWhen(System.currentTimeMillis())
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setOngoing(true)
-                .setVibrate(Constants.VIBRATION_PATTERN)
-                .setSmallIcon(R.drawable.ic_alarm_white_24dp)
-                .setContentTitle(context.getString(R.string.app_name))
+        NotificationCompat.Builder builder = NotificationChannels.newAlarmBuilder(context, NotificationChannels.CHANNEL_ALARM)
                 .setContentText(context.getString(R.string.alarm_notification_text))
                 .addAction(R.drawable.ic_stop_white_24dp, context.getString(R.string.stop), stopIntent)
                 .setFullScreenIntent(fullScreenPendingIntent, true);
@@ -120,14 +168,15 @@ public class AlarmReceiver extends BroadcastReceiver {
     /**
         * Creates a PendingIntent to stop the alarm
         *
-        * @param context Context
-        * @param alarm   Alarm to stop
+        * @param context  Context
+        * @param alarmId  id of the alarm to stop
+        * @param salivaId saliva id of the alarm to stop
         * @return PendingIntent to stop the alarm
     */
-    private PendingIntent createStopAlarmIntent(Context context, Alarm alarm) {
+    private PendingIntent createStopAlarmIntent(Context context, int alarmId, int salivaId) {
         Intent stopAlarmIntent = new Intent(context, AlarmStopReceiver.class);
-        stopAlarmIntent.putExtra(Constants.EXTRA_ALARM_ID, alarm.getId());
-        stopAlarmIntent.putExtra(Constants.EXTRA_SALIVA_ID, alarm.getSalivaId());
+        stopAlarmIntent.putExtra(Constants.EXTRA_ALARM_ID, alarmId);
+        stopAlarmIntent.putExtra(Constants.EXTRA_SALIVA_ID, salivaId);
         stopAlarmIntent.putExtra(Constants.EXTRA_SOURCE, AlarmSource.SOURCE_NOTIFICATION);
         stopAlarmIntent.setAction(Constants.ACTION_STOP_ALARM);
 
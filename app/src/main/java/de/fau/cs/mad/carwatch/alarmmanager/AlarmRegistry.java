@@ -0,0 +1,93 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.SparseLongArray;
+
+import java.util.Map;
+
+/**
+ * Keeps track of the alarms registered with the AlarmManager and their trigger times, so that
+ * reconciling the alarms in the database with the AlarmManager only registers or cancels the
+ * alarms that actually changed.
+ *
+ * <p>Registered alarms outlive the process (e.g., when it is killed in the background or the app
+ * is updated), so the registry is persisted in its own preferences file. On reboot and when the app
+ * is force-stopped, the system drops the alarms together with their PendingIntents. The persisted
+ * registry is therefore checked once per process: entries whose PendingIntent no longer exists are
+ * dropped, so that these alarms are registered again.
+ */
+final class AlarmRegistry {
+
+    private static final String TAG = AlarmRegistry.class.getSimpleName();
+
+    private static final String PREFS_NAME = "alarm_registry";
+
+    private static SharedPreferences prefs;
+    private static SparseLongArray registeredAlarms;
+
+    private AlarmRegistry() {
+    }
+
+    /**
+     * Returns whether the alarm is registered to ring at the given time.
+     */
+    static synchronized boolean isRegistered(Context context, int alarmId, long triggerAtMillis) {
+        return getRegisteredAlarms(context).get(alarmId, -1) == triggerAtMillis;
+    }
+
+    static synchronized boolean isRegistered(Context context, int alarmId) {
+        return getRegisteredAlarms(context).indexOfKey(alarmId) >= 0;
+    }
+
+    static synchronized void markRegistered(Context context, int alarmId, long triggerAtMillis) {
+        getRegisteredAlarms(context).put(alarmId, triggerAtMillis);
+        prefs.edit().putLong(String.valueOf(alarmId), triggerAtMillis).apply();
+    }
+
+    /**
+     * Removes the alarm from the registry, either because it was cancelled or because it fired.
+     */
+    static synchronized void markUnregistered(Context context, int alarmId) {
+        SparseLongArray alarms = getRegisteredAlarms(context);
+        if (alarms.indexOfKey(alarmId) < 0)
+            return;
+        alarms.delete(alarmId);
+        prefs.edit().remove(String.valueOf(alarmId)).apply();
+    }
+
+    static synchronized int[] getRegisteredIds(Context context) {
+        SparseLongArray alarms = getRegisteredAlarms(context);
+        int[] ids = new int[alarms.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = alarms.keyAt(i);
+        }
+        return ids;
+    }
+
+    private static SparseLongArray getRegisteredAlarms(Context context) {
+        if (registeredAlarms == null) {
+            load(context);
+        }
+        return registeredAlarms;
+    }
+
+    private static void load(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        registeredAlarms = new SparseLongArray();
+        SharedPreferences.Editor editor = prefs.edit();
+        int numDropped = 0;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            int alarmId = Integer.parseInt(entry.getKey());
+            if (entry.getValue() instanceof Long && AlarmScheduler.findOperationIntent(context, alarmId) != null) {
+                registeredAlarms.put(alarmId, (Long) entry.getValue());
+            } else {
+                editor.remove(entry.getKey());
+                numDropped++;
+            }
+        }
+        editor.apply();
+        Log.d(TAG, "Loaded " + registeredAlarms.size() + " registered alarms, dropped " + numDropped + " cleared by the system");
+    }
+}
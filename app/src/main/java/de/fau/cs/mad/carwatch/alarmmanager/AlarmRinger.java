@@ -0,0 +1,192 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+/**
+ * Executes the PLAY and STOP commands of {@link AlarmSoundControl} and escalates the alarm that is
+ * ringing.
+ *
+ * <p>Commands are posted to a {@link CommandQueue} and executed one after the other in the order
+ * they were posted; the queue is backed by the playback thread in the app. An alarm that is played
+ * while another one is ringing replaces it. Each escalation step is one tick on the queue, which
+ * schedules the next one.
+ *
+ * <p>This class has no Android dependencies: the players and the vibrator are behind an
+ * {@link Output}, and time is read from a {@link Clock}, so that it can be driven from JVM tests.
+ */
+class AlarmRinger {
+
+    /**
+     * Executes commands one after the other, in the order they were posted.
+     */
+    interface CommandQueue {
+
+        void post(Runnable command);
+
+        void postDelayed(Runnable command, long delayMillis);
+
+        /**
+         * Removes pending posts of the given command.
+         */
+        void removeCallbacks(Runnable command);
+    }
+
+    interface Clock {
+
+        long elapsedRealtime();
+    }
+
+    /**
+     * Sound and vibration of one ringing alarm. Only called from the command queue.
+     */
+    interface Output {
+
+        /**
+         * Starts playing at the given level.
+         *
+         * @return whether a sound is playing
+         */
+        boolean start(float volume, int amplitude);
+
+        void setLevel(float volume, int amplitude);
+
+        void stop();
+    }
+
+    interface EscalationListener {
+
+        /**
+         * Called (on the command queue) when the alarm starts ringing and on each escalation step.
+         *
+         * @param playingTime time since the alarm started ringing
+         * @param rering      whether the alarm continued at the step it had reached before
+         */
+        void onEscalated(int alarmId, int step, float volume, int amplitude, long playingTime, boolean rering);
+    }
+
+    private final CommandQueue queue;
+    private final Clock clock;
+    private final EscalationListener listener;
+    private final Runnable escalate = this::escalate;
+
+    // only accessed from the command queue
+    private Output output;
+    private int alarmId;
+    private int escalationStep = -1;
+    private long escalationInterval;
+    private long playbackStartTime;
+    private boolean isRering;
+    private int lastStoppedAlarmId;
+    private int lastStoppedStep = -1;
+    private long lastStopTime;
+
+    AlarmRinger(CommandQueue queue, Clock clock, EscalationListener listener) {
+        this.queue = queue;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * Posts a PLAY command, which replaces the alarm that is currently ringing.
+     *
+     * @param escalationDuration time until full volume is reached, 0 to ring at full volume right
+     *                           away
+     * @return future of the elapsed realtime when playback started, or -1 if no sound could be
+     * played
+     */
+    Future<Long> play(int alarmId, long escalationDuration, Output output) {
+        FutureTask<Long> play = new FutureTask<>(() -> doPlay(alarmId, escalationDuration, output));
+        queue.post(play);
+        return play;
+    }
+
+    /**
+     * Posts a STOP command.
+     *
+     * @return future that completes once the alarm has been stopped
+     */
+    Future<Void> stop() {
+        FutureTask<Void> stop = new FutureTask<>(this::doStop, null);
+        queue.post(stop);
+        return stop;
+    }
+
+    private long doPlay(int alarmId, long escalationDuration, Output output) {
+        int startStep = getStartStep(alarmId);
+        // an alarm that is already ringing is replaced
+        doStop();
+
+        if (escalationDuration <= 0) {
+            startStep = Constants.ALARM_ESCALATION_NUM_STEPS;
+        }
+        this.alarmId = alarmId;
+        this.output = output;
+        escalationInterval = escalationDuration / Constants.ALARM_ESCALATION_NUM_STEPS;
+        isRering = startStep > 0 && escalationDuration > 0;
+
+        boolean playing = output.start(getVolume(startStep), getAmplitude(startStep));
+        playbackStartTime = clock.elapsedRealtime();
+        onStep(startStep);
+        return playing ? playbackStartTime : -1;
+    }
+
+    private void doStop() {
+        queue.removeCallbacks(escalate);
+        if (escalationStep >= 0) {
+            lastStoppedAlarmId = alarmId;
+            lastStoppedStep = escalationStep;
+            lastStopTime = clock.elapsedRealtime();
+            escalationStep = -1;
+        }
+        if (output != null) {
+            output.stop();
+            output = null;
+        }
+    }
+
+    private void escalate() {
+        if (escalationStep < 0 || escalationStep >= Constants.ALARM_ESCALATION_NUM_STEPS) {
+            return;
+        }
+        int step = escalationStep + 1;
+        output.setLevel(getVolume(step), getAmplitude(step));
+        onStep(step);
+    }
+
+    private void onStep(int step) {
+        escalationStep = step;
+        if (step < Constants.ALARM_ESCALATION_NUM_STEPS) {
+            queue.postDelayed(escalate, escalationInterval);
+        }
+        listener.onEscalated(alarmId, step, getVolume(step), getAmplitude(step),
+                clock.elapsedRealtime() - playbackStartTime, isRering);
+    }
+
+    /**
+     * Returns the escalation step the given alarm starts ringing at: the step it had reached if it
+     * is still ringing or was stopped within {@link Constants#ALARM_RERING_WINDOW}, otherwise 0.
+     */
+    private int getStartStep(int alarmId) {
+        if (escalationStep >= 0 && this.alarmId == alarmId) {
+            return escalationStep;
+        }
+        if (lastStoppedStep >= 0 && lastStoppedAlarmId == alarmId
+                && clock.elapsedRealtime() - lastStopTime < Constants.ALARM_RERING_WINDOW) {
+            return lastStoppedStep;
+        }
+        return 0;
+    }
+
+    static float getVolume(int step) {
+        float fraction = (float) step / Constants.ALARM_ESCALATION_NUM_STEPS;
+        return Constants.ALARM_ESCALATION_START_VOLUME + (1 - Constants.ALARM_ESCALATION_START_VOLUME) * fraction;
+    }
+
+    static int getAmplitude(int step) {
+        float fraction = (float) step / Constants.ALARM_ESCALATION_NUM_STEPS;
+        return Math.round(Constants.ALARM_ESCALATION_START_AMPLITUDE + (255 - Constants.ALARM_ESCALATION_START_AMPLITUDE) * fraction);
+    }
+}
@@ -0,0 +1,280 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.app.AlarmManager;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
+import de.fau.cs.mad.carwatch.ui.MainActivity;
+import de.fau.cs.mad.carwatch.userpresent.BootCompletedReceiver;
+
+/**
+ * Facade for all calls to the AlarmManager that register or cancel alarms.
+ *
+ * <p>Alarms are registered as alarm clocks if exact alarms are allowed, otherwise inexactly (see
+ * {@link ScheduleStrategy}).
+ *
+ * <p>Every call into the AlarmManager, the PackageManager or the creation of a PendingIntent is a
+ * binder call into the system server. The scheduler therefore caches the system service handles
+ * and the PendingIntents per alarm id, only changes the enabled state of the
+ * {@link BootCompletedReceiver} if it actually changes, and counts the remaining calls.
+ *
+ * <p>Several alarms scheduled at once (e.g., the day plan of the saliva alarms) can be grouped
+ * between {@link #beginBatch()} and {@link #endBatch(Context)}: requests for the same alarm are
+ * coalesced (the last one wins), and the number of system calls needed for the batch is logged.
+ * Callbacks passed to {@link #schedule(Context, int, int, long, Runnable)} run once the alarm was
+ * actually registered, i.e., when the batch ends.
+ */
+final class AlarmScheduler {
+
+    private static final String TAG = AlarmScheduler.class.getSimpleName();
+
+    private static AlarmManager alarmManager;
+    private static NotificationManager notificationManager;
+
+    private static final SparseArray<PendingIntent> operationIntents = new SparseArray<>();
+    private static final SparseIntArray operationSalivaIds = new SparseIntArray();
+    private static final SparseLongArray operationTriggerTimes = new SparseLongArray();
+    private static final SparseArray<ScheduleStrategy> operationStrategies = new SparseArray<>();
+    private static PendingIntent showIntent;
+    private static Boolean bootReceiverEnabled;
+
+    private static boolean batchActive = false;
+    private static final SparseLongArray batchedAlarms = new SparseLongArray();
+    private static final SparseIntArray batchedSalivaIds = new SparseIntArray();
+    private static final SparseArray<Runnable> batchedCallbacks = new SparseArray<>();
+    private static int numIpcCalls = 0;
+
+    private AlarmScheduler() {
+    }
+
+    static synchronized AlarmManager getAlarmManager(Context context) {
+        if (alarmManager == null) {
+            alarmManager = (AlarmManager) context.getApplicationContext().getSystemService(Context.ALARM_SERVICE);
+        }
+        return alarmManager;
+    }
+
+    static synchronized NotificationManager getNotificationManager(Context context) {
+        if (notificationManager == null) {
+            notificationManager = (NotificationManager) context.getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
+        }
+        return notificationManager;
+    }
+
+    /**
+     * Starts collecting alarm requests instead of registering them right away.
+     */
+    static synchronized void beginBatch() {
+        batchActive = true;
+        numIpcCalls = 0;
+    }
+
+    /**
+     * Registers all alarms requested since {@link #beginBatch()}, logs the number of system calls
+     * needed for the batch and then runs the callbacks of the registered alarms.
+     */
+    static void endBatch(Context context) {
+        List<Runnable> callbacks = registerBatch(context);
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    private static synchronized List<Runnable> registerBatch(Context context) {
+        if (!batchActive)
+            return Collections.emptyList();
+        batchActive = false;
+
+        int numAlarms = batchedAlarms.size();
+        List<Runnable> callbacks = new ArrayList<>(numAlarms);
+        for (int i = 0; i < numAlarms; i++) {
+            int alarmId = batchedAlarms.keyAt(i);
+            scheduleNow(context, alarmId, batchedSalivaIds.get(alarmId), batchedAlarms.valueAt(i));
+            Runnable callback = batchedCallbacks.get(alarmId);
+            if (callback != null)
+                callbacks.add(callback);
+        }
+        batchedAlarms.clear();
+        batchedSalivaIds.clear();
+        batchedCallbacks.clear();
+
+        Log.d(TAG, "Scheduled " + numAlarms + " alarms with " + numIpcCalls + " system calls");
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_NUM_ALARMS, numAlarms);
+            json.put(Constants.LOGGER_EXTRA_NUM_IPC_CALLS, numIpcCalls);
+            LoggerUtil.log(Constants.LOGGER_ACTION_ALARM_SCHEDULE_BATCH, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return callbacks;
+    }
+
+    /**
+     * Registers the alarm with the given id, or queues it if a batch is active. The saliva id is
+     * passed to the {@link AlarmReceiver}, so that it can start ringing without looking up the
+     * alarm first.
+     *
+     * @param onScheduled run once the alarm is registered: right away, or at the end of the batch
+     *                    unless the request is replaced or cancelled before
+     * @return false if the AlarmManager is not available
+     */
+    static boolean schedule(Context context, int alarmId, int salivaId, long triggerAtMillis, @Nullable Runnable onScheduled) {
+        synchronized (AlarmScheduler.class) {
+            if (getAlarmManager(context) == null)
+                return false;
+
+            if (batchActive) {
+                batchedAlarms.put(alarmId, triggerAtMillis);
+                batchedSalivaIds.put(alarmId, salivaId);
+                batchedCallbacks.put(alarmId, onScheduled);
+                return true;
+            }
+            scheduleNow(context, alarmId, salivaId, triggerAtMillis);
+        }
+        if (onScheduled != null)
+            onScheduled.run();
+        return true;
+    }
+
+    /**
+     * Cancels the alarm with the given id, including a request queued in the current batch.
+     *
+     * @return whether an alarm was registered with the AlarmManager and is cancelled now
+     */
+    static synchronized boolean cancel(Context context, int alarmId) {
+        batchedAlarms.delete(alarmId);
+        batchedSalivaIds.delete(alarmId);
+        batchedCallbacks.delete(alarmId);
+
+        boolean registered = AlarmRegistry.isRegistered(context, alarmId);
+        if (!registered)
+            // a cached PendingIntent does not mean that its alarm has not been cancelled or fired
+            return false;
+        AlarmRegistry.markUnregistered(context, alarmId);
+
+        PendingIntent operation = operationIntents.get(alarmId);
+        if (operation == null) {
+            // registered by an earlier process
+            numIpcCalls++;
+            operation = findOperationIntent(context, alarmId);
+        }
+
+        AlarmManager alarmManager = getAlarmManager(context);
+        if (alarmManager == null || operation == null)
+            // dropped by the system in the meantime
+            return false;
+
+        numIpcCalls++;
+        alarmManager.cancel(operation);
+        return true;
+    }
+
+    /**
+     * Enables or disables the {@link BootCompletedReceiver}, which re-registers the alarms after a
+     * reboot.
+     */
+    static synchronized void setBootReceiverEnabled(Context context, boolean enabled) {
+        if (bootReceiverEnabled != null && bootReceiverEnabled == enabled)
+            return;
+
+        int flag = enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED : PackageManager.COMPONENT_ENABLED_STATE_DISABLED;
+        ComponentName receiver = new ComponentName(context, BootCompletedReceiver.class);
+        numIpcCalls++;
+        context.getPackageManager().setComponentEnabledSetting(receiver, flag, PackageManager.DONT_KILL_APP);
+        bootReceiverEnabled = enabled;
+    }
+
+    /**
+     * Returns the operation of the alarm with the given id if it still exists in the system, e.g.,
+     * registered by an earlier process, or null. Not synchronized, as it is also called by the
+     * {@link AlarmRegistry} while loading.
+     */
+    static PendingIntent findOperationIntent(Context context, int alarmId) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        int pendingFlags = PendingIntent.FLAG_NO_CREATE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            pendingFlags |= PendingIntent.FLAG_IMMUTABLE;
+        return PendingIntent.getBroadcast(context, alarmId, intent, pendingFlags);
+    }
+
+    private static void scheduleNow(Context context, int alarmId, int salivaId, long triggerAtMillis) {
+        AlarmManager alarmManager = getAlarmManager(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+            // canScheduleExactAlarms()
+            numIpcCalls++;
+        ScheduleStrategy strategy = ScheduleStrategy.forAlarm(alarmManager);
+        PendingIntent showIntent = strategy == ScheduleStrategy.ALARM_CLOCK ? getShowIntent(context) : null;
+        PendingIntent operation = getOperationIntent(context, alarmId, salivaId, triggerAtMillis, strategy);
+        numIpcCalls++;
+        strategy.schedule(alarmManager, triggerAtMillis, operation, showIntent);
+        AlarmRegistry.markRegistered(context, alarmId, triggerAtMillis);
+        setBootReceiverEnabled(context, true);
+    }
+
+    private static PendingIntent getOperationIntent(Context context, int alarmId, int salivaId, long triggerAtMillis, ScheduleStrategy strategy) {
+        PendingIntent operation = operationIntents.get(alarmId);
+        if (operation == null
+                || operationSalivaIds.get(alarmId) != salivaId
+                || operationTriggerTimes.get(alarmId) != triggerAtMillis
+                || operationStrategies.get(alarmId) != strategy) {
+            // FLAG_UPDATE_CURRENT also updates the extras of an already registered alarm
+            Intent intent = new Intent(context, AlarmReceiver.class);
+            intent.putExtra(Constants.EXTRA_ALARM_ID, alarmId);
+            intent.putExtra(Constants.EXTRA_SALIVA_ID, salivaId);
+            strategy.putExtras(intent, triggerAtMillis);
+            numIpcCalls++;
+            operation = PendingIntent.getBroadcast(context, alarmId, intent, getPendingIntentFlags());
+            operationIntents.put(alarmId, operation);
+            operationSalivaIds.put(alarmId, salivaId);
+            operationTriggerTimes.put(alarmId, triggerAtMillis);
+            operationStrategies.put(alarmId, strategy);
+        }
+        return operation;
+    }
+
+    /**
+     * Returns the intent that opens the app if the user taps on the alarm clock info of the
+     * system. The same for all alarms.
+     */
+    private static PendingIntent getShowIntent(Context context) {
+        if (showIntent == null) {
+            Intent intent = new Intent(context, MainActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            numIpcCalls++;
+            showIntent = PendingIntent.getActivity(
+                    context,
+                    Constants.REQUEST_CODE_ALARM_ACTIVITY,
+                    intent,
+                    getPendingIntentFlags());
+        }
+        return showIntent;
+    }
+
+    private static int getPendingIntentFlags() {
+        int pendingFlags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            pendingFlags |= PendingIntent.FLAG_IMMUTABLE;
+        return pendingFlags;
+    }
+}
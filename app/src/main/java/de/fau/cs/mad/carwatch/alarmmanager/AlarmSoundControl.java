@@ -1,37 +1,95 @@
 package de.fau.cs.mad.carwatch.alarmmanager;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioFormat;
 import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.media.MediaPlayer;
-import android.media.RingtoneManager;
-import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
 
-import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
+import androidx.preference.PreferenceManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 
 /**
  * Singleton class to control Alarm Ringing Sound
+ *
+ * <p>The alarm tone is played from the PCM data decoded in advance by {@link AlarmTone} with a
+ * looping AudioTrack, so ringing starts without decoding the tone first. If the tone has not been
+ * decoded (yet), it falls back to a MediaPlayer.
+ *
+ * <p>Alarms start gently and escalate: volume and vibration intensity are raised in
+ * {@link Constants#ALARM_ESCALATION_NUM_STEPS} steps over {@link Constants#PREF_ALARM_ESCALATION_DURATION}.
+ * Each step is logged. An alarm that rings again shortly after it was stopped (or that replaces
+ * itself while ringing) continues at the step it had reached instead of starting quietly again.
+ * The commands and the escalation are run by an {@link AlarmRinger}.
+ *
+ * <p>The players and the vibrator are owned by a single playback thread. The public methods only
+ * post PLAY and STOP commands to its queue, so they never block the calling thread, and
+ * overlapping alarm and timer events are executed one after the other in the order they were
+ * posted. Each command returns a future that completes once it has been executed, so receivers can
+ * hold their wake lock until then (see {@link #awaitCommand(Future)}).
  */
 public class AlarmSoundControl {
 
     private static final String TAG = AlarmSoundControl.class.getSimpleName();
 
+    private static final long COMMAND_TIMEOUT_MS = 5000;
+
+    private static final AudioAttributes ALARM_ATTRIBUTES = new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_ALARM)
+            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+            .build();
+
     private static AlarmSoundControl sInstance;
 
-    private MediaPlayer mediaPlayer;
-    private Vibrator vibrator;
+    private final AlarmRinger ringer;
 
     private AlarmSoundControl() {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_URGENT_AUDIO);
+        thread.start();
+        Handler handler = new Handler(thread.getLooper());
+        AlarmRinger.CommandQueue queue = new AlarmRinger.CommandQueue() {
+            @Override
+            public void post(Runnable command) {
+                handler.post(command);
+            }
+
+            @Override
+            public void postDelayed(Runnable command, long delayMillis) {
+                handler.postDelayed(command, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable command) {
+                handler.removeCallbacks(command);
+            }
+        };
+        ringer = new AlarmRinger(queue, SystemClock::elapsedRealtime, AlarmSoundControl::logEscalation);
     }
 
-    public static AlarmSoundControl getInstance() {
+    public static synchronized AlarmSoundControl getInstance() {
         if (sInstance == null) {
             sInstance = new AlarmSoundControl();
         }
@@ -39,68 +97,248 @@ public class AlarmSoundControl {
     }
 
     /**
-     * Play Alarm Sound
+     * Play Alarm Sound, replacing the sound that is currently playing
+     *
+     * @param alarmId id of the alarm or timer that rings
+     * @return future of the elapsed realtime when playback started, or -1 if no sound could be played
      */
-    @RequiresApi(api = Build.VERSION_CODES.P)
-    public void playAlarmSound(Context context) {
-        Log.d(TAG, "Playing alarm sound");
+    public Future<Long> playAlarmSound(Context context, int alarmId) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+        long duration = sp.getLong(Constants.PREF_ALARM_ESCALATION_DURATION, Constants.ALARM_ESCALATION_DEFAULT_DURATION);
+        Log.d(TAG, "Playing alarm sound for alarm " + alarmId);
+        return ringer.play(alarmId, duration, new DeviceOutput(appContext));
+    }
+
+    /**
+     * Stop Alarm Sound currently playing
+     *
+     * @return future that completes once the sound has been stopped
+     */
+    public Future<Void> stopAlarmSound() {
+        return ringer.stop();
+    }
+
+    /**
+     * Waits (at most {@link #COMMAND_TIMEOUT_MS}) until the playback thread has executed the given
+     * PLAY or STOP command. Must not be called on the playback thread.
+     */
+    @WorkerThread
+    static void awaitCommand(Future<?> command) {
+        try {
+            command.get(COMMAND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | InterruptedException | TimeoutException e) {
+            Log.e(TAG, "Alarm sound command did not complete", e);
+        }
+    }
 
-        mediaPlayer = new MediaPlayer();
+    private static void logEscalation(int alarmId, int step, float volume, int amplitude, long playingTime, boolean rering) {
+        Log.d(TAG, "Alarm " + alarmId + " escalated to step " + step + " (volume " + volume + ")");
         try {
-            mediaPlayer.setDataSource(context, getAlarmUri());
-            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_ALARM_ID, alarmId);
+            json.put(Constants.LOGGER_EXTRA_ESCALATION_STEP, step);
+            json.put(Constants.LOGGER_EXTRA_VOLUME, volume);
+            json.put(Constants.LOGGER_EXTRA_VIBRATION_AMPLITUDE, amplitude);
+            json.put(Constants.LOGGER_EXTRA_DURATION, playingTime);
+            json.put(Constants.LOGGER_EXTRA_RERING, rering);
+            LoggerUtil.log(Constants.LOGGER_ACTION_ALARM_ESCALATION, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Players, vibrator and audio focus of one ringing alarm. Only used on the playback thread.
+     */
+    private static class DeviceOutput implements AlarmRinger.Output {
+
+        private final Context context;
+
+        private AudioTrack audioTrack;
+        private MediaPlayer mediaPlayer;
+        private Vibrator vibrator;
+        private AudioManager audioManager;
+        private AudioFocusRequest audioFocusRequest;
+
+        DeviceOutput(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public boolean start(float volume, int amplitude) {
+            audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
             vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
 
-            if (audioManager != null) {
-                if (audioManager.getStreamVolume(AudioManager.STREAM_ALARM) <= audioManager.getStreamVolume(AudioManager.RINGER_MODE_SILENT)) {
-                    audioManager.setStreamVolume(AudioManager.STREAM_ALARM, audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM), 0);
-                }
-                mediaPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
-                mediaPlayer.prepare();
-                mediaPlayer.start();
+            if (audioManager == null) {
+                return false;
+            }
+            ensureAudible(audioManager);
+            requestAudioFocus(audioManager);
 
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            AlarmTone tone = AlarmTone.get(context);
+            if (tone == null || !playTone(tone, volume)) {
+                playWithMediaPlayer(volume);
+            }
+
+            if (vibrator != null) {
+                if (hasAmplitudeControl()) {
+                    vibrate(amplitude);
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    // the intensity can't be raised, so vibrate at full intensity right away
                     vibrator.vibrate(VibrationEffect.createWaveform(Constants.VIBRATION_PATTERN, 0));
                 } else {
                     vibrator.vibrate(Constants.VIBRATION_PATTERN, 0);
                 }
+            }
+            return audioTrack != null || mediaPlayer != null;
+        }
 
-                mediaPlayer.setOnCompletionListener(MediaPlayer::start);
+        @Override
+        public void setLevel(float volume, int amplitude) {
+            if (audioTrack != null) {
+                audioTrack.setVolume(volume);
+            }
+            if (mediaPlayer != null) {
+                mediaPlayer.setVolume(volume, volume);
+            }
+            if (vibrator != null && hasAmplitudeControl()) {
+                vibrate(amplitude);
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (audioTrack != null) {
+                try {
+                    audioTrack.stop();
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Could not stop alarm tone", e);
+                }
+                audioTrack.release();
+                audioTrack = null;
             }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Can't read Alarm uri: " + getAlarmUri());
+            if (mediaPlayer != null) {
+                if (mediaPlayer.isPlaying()) {
+                    mediaPlayer.stop();
+                }
+                mediaPlayer.release();
+                mediaPlayer = null;
+            }
+
+            if (vibrator != null) {
+                vibrator.cancel();
+            }
+
+            abandonAudioFocus();
         }
-    }
 
-    /**
-     * Stop Alarm Sound currently playing
-     */
-    public void stopAlarmSound() {
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
+        private boolean hasAmplitudeControl() {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && vibrator.hasAmplitudeControl();
+        }
+
+        private void vibrate(int amplitude) {
+            long[] timings = Constants.VIBRATION_PATTERN;
+            int[] amplitudes = new int[timings.length];
+            // odd entries of the pattern are the vibrating ones
+            for (int i = 1; i < amplitudes.length; i += 2) {
+                amplitudes[i] = amplitude;
+            }
+            vibrator.vibrate(VibrationEffect.createWaveform(timings, amplitudes, 0));
+        }
+
+        private boolean playTone(AlarmTone tone, float volume) {
+            int channelMask = tone.channelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            AudioFormat format = new AudioFormat.Builder()
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setSampleRate(tone.sampleRate)
+                    .setChannelMask(channelMask)
+                    .build();
+
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    audioTrack = new AudioTrack.Builder()
+                            .setAudioAttributes(ALARM_ATTRIBUTES)
+                            .setAudioFormat(format)
+                            .setBufferSizeInBytes(tone.pcm.length)
+                            .setTransferMode(AudioTrack.MODE_STATIC)
+                            .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                            .build();
+                } else {
+                    audioTrack = new AudioTrack(ALARM_ATTRIBUTES, format, tone.pcm.length,
+                            AudioTrack.MODE_STATIC, AudioManager.AUDIO_SESSION_ID_GENERATE);
+                }
+                audioTrack.write(tone.pcm, 0, tone.pcm.length);
+                audioTrack.setLoopPoints(0, tone.getFrameCount(), -1);
+                audioTrack.setVolume(volume);
+                audioTrack.play();
+                return true;
+            } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException e) {
+                Log.e(TAG, "Could not play decoded alarm tone", e);
+                if (audioTrack != null) {
+                    audioTrack.release();
+                    audioTrack = null;
+                }
+                return false;
+            }
+        }
+
+        private void playWithMediaPlayer(float volume) {
             mediaPlayer = new MediaPlayer();
+            try {
+                mediaPlayer.setDataSource(context, AlarmTone.getAlarmUri());
+                mediaPlayer.setAudioAttributes(ALARM_ATTRIBUTES);
+                mediaPlayer.setLooping(true);
+                mediaPlayer.setVolume(volume, volume);
+                mediaPlayer.prepare();
+                mediaPlayer.start();
+            } catch (IOException e) {
+                Log.e(TAG, "Can't read Alarm uri: " + AlarmTone.getAlarmUri());
+                mediaPlayer.release();
+                mediaPlayer = null;
+            }
+        }
+
+        /**
+         * Raises the alarm volume to the maximum if it is turned all the way down, so that the
+         * alarm can't be missed. Any other volume the user has set is kept.
+         */
+        private static void ensureAudible(AudioManager audioManager) {
+            int minVolume = 0;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                minVolume = audioManager.getStreamMinVolume(AudioManager.STREAM_ALARM);
+            }
+            int volume = audioManager.getStreamVolume(AudioManager.STREAM_ALARM);
+            if (volume <= minVolume) {
+                Log.d(TAG, "Alarm volume is turned down (" + volume + "), raising it to the maximum");
+                audioManager.setStreamVolume(AudioManager.STREAM_ALARM, audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM), 0);
+            }
         }
 
-        if (vibrator != null) {
-            vibrator.cancel();
+        private void requestAudioFocus(AudioManager audioManager) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT)
+                        .setAudioAttributes(ALARM_ATTRIBUTES)
+                        .build();
+                audioManager.requestAudioFocus(audioFocusRequest);
+            } else {
+                audioManager.requestAudioFocus(null, AudioManager.STREAM_ALARM, AudioManager.AUDIOFOCUS_GAIN_TRANSIENT);
+            }
         }
-    }
 
-    /**
-     * Get alarm sound: try to get default alarm, then notification, then ringtone
-     *
-     * @return URI for alarm sound
-     */
-    private Uri getAlarmUri() {
-        Uri alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
-        if (alarm == null) {
-            alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-            if (alarm == null) {
-                alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
+        private void abandonAudioFocus() {
+            if (audioManager == null) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                if (audioFocusRequest != null) {
+                    audioManager.abandonAudioFocusRequest(audioFocusRequest);
+                    audioFocusRequest = null;
+                }
+            } else {
+                audioManager.abandonAudioFocus(null);
             }
         }
-        return alarm;
     }
-}
\ No newline at end of file
+}
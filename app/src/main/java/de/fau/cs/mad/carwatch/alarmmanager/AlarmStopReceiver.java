@@ -17,6 +17,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.fau.cs.mad.carwatch.Constants;
 import de.fau.cs.mad.carwatch.db.Alarm;
@@ -30,12 +33,30 @@ import de.fau.cs.mad.carwatch.util.AlarmRepository;
 public class AlarmStopReceiver extends BroadcastReceiver {
 
     private final String TAG = AlarmStopReceiver.class.getSimpleName();
+    private static final Executor backgroundExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        // held until the alarm sound has been stopped
+        WakeLockManager.Section wakeLock = WakeLockManager.acquire(context, TAG, Constants.WAKE_LOCK_TIMEOUT);
         AlarmSoundControl alarmSoundControl = AlarmSoundControl.getInstance();
-        alarmSoundControl.stopAlarmSound();
+        Future<Void> soundStopped = alarmSoundControl.stopAlarmSound();
+
+        stopAlarm(context, intent);
+
+        // the result code set by stopAlarm is passed on with the pending result
+        PendingResult pendingResult = goAsync();
+        backgroundExecutor.execute(() -> {
+            try {
+                AlarmSoundControl.awaitCommand(soundStopped);
+            } finally {
+                pendingResult.finish();
+                wakeLock.release();
+            }
+        });
+    }
 
+    private void stopAlarm(Context context, Intent intent) {
         // Dismiss notification
         NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         if (notificationManager != null) {
@@ -0,0 +1,272 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The alarm tone, decoded to 16-bit PCM.
+ *
+ * <p>Decoding is done once when alarms are scheduled ({@link #preload(Context)}) and the result is
+ * cached in memory and in the app's cache directory, so that an alarm can start playing the tone
+ * right away instead of decoding it while the alarm is already due.
+ */
+final class AlarmTone {
+
+    private static final String TAG = AlarmTone.class.getSimpleName();
+
+    private static final String CACHE_FILE_NAME = "alarm_tone.pcm";
+    private static final int CACHE_FILE_VERSION = 1;
+
+    /**
+     * Longer tones are cut off, the tone is looped anyway. Also bounds the size of the static
+     * AudioTrack buffer (about 12 s of 44.1 kHz stereo audio).
+     */
+    private static final int MAX_PCM_BYTES = 2 * 1024 * 1024;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private static AlarmTone cachedTone;
+
+    final String source;
+    final byte[] pcm;
+    final int sampleRate;
+    final int channelCount;
+
+    private AlarmTone(String source, byte[] pcm, int sampleRate, int channelCount) {
+        this.source = source;
+        this.pcm = pcm;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    int getFrameCount() {
+        return pcm.length / (2 * channelCount);
+    }
+
+    /**
+     * Decodes the current alarm tone in the background, unless it is already cached.
+     */
+    static void preload(Context context) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            if (get(appContext) == null) {
+                Log.d(TAG, "Decoding alarm tone");
+                decodeAndCache(appContext);
+            }
+        });
+    }
+
+    /**
+     * Returns the cached tone if it matches the current alarm tone, or null if it has not been
+     * decoded yet. Only reads the cache file if the tone is not in memory.
+     */
+    @Nullable
+    static synchronized AlarmTone get(Context context) {
+        String source = getSource(context);
+        if (cachedTone != null && cachedTone.source.equals(source)) {
+            return cachedTone;
+        }
+        AlarmTone tone = readCacheFile(context);
+        if (tone != null && tone.source.equals(source)) {
+            cachedTone = tone;
+            return tone;
+        }
+        return null;
+    }
+
+    /**
+     * Get alarm sound: try to get default alarm, then notification, then ringtone
+     *
+     * @return URI for alarm sound
+     */
+    static Uri getAlarmUri() {
+        Uri alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        if (alarm == null) {
+            alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+            if (alarm == null) {
+                alarm = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
+            }
+        }
+        return alarm;
+    }
+
+    /**
+     * Returns an identifier of the tone currently selected as alarm tone. The default URIs always
+     * stay the same, so the actual sound they point to is used.
+     */
+    private static String getSource(Context context) {
+        Uri actual = RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_ALARM);
+        return String.valueOf(actual != null ? actual : getAlarmUri());
+    }
+
+    @WorkerThread
+    private static void decodeAndCache(Context context) {
+        String source = getSource(context);
+        AlarmTone tone;
+        try {
+            tone = decode(context, getAlarmUri(), source);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not decode alarm tone " + source, e);
+            return;
+        }
+        if (tone == null)
+            return;
+
+        synchronized (AlarmTone.class) {
+            cachedTone = tone;
+        }
+        writeCacheFile(context, tone);
+    }
+
+    @Nullable
+    private static AlarmTone decode(Context context, Uri uri, String source) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                Log.e(TAG, "No audio track in alarm tone " + source);
+                return null;
+            }
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+
+            while (!outputDone && out.size() < MAX_PCM_BYTES) {
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer inputBuffer = codec.getInputBuffer(inputIndex);
+                        int size = inputBuffer != null ? extractor.readSampleData(inputBuffer, 0) : -1;
+                        if (size < 0) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outputIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outputIndex >= 0) {
+                    ByteBuffer outputBuffer = codec.getOutputBuffer(outputIndex);
+                    if (outputBuffer != null && info.size > 0) {
+                        byte[] chunk = new byte[info.size];
+                        outputBuffer.position(info.offset);
+                        outputBuffer.get(chunk);
+                        out.write(chunk, 0, chunk.length);
+                    }
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                }
+            }
+
+            if (channelCount < 1 || channelCount > 2) {
+                Log.e(TAG, "Unsupported channel count " + channelCount + " of alarm tone " + source);
+                return null;
+            }
+            byte[] pcm = out.toByteArray();
+            int frameSize = 2 * channelCount;
+            int length = Math.min(pcm.length, MAX_PCM_BYTES) / frameSize * frameSize;
+            if (length == 0)
+                return null;
+            if (length < pcm.length) {
+                byte[] truncated = new byte[length];
+                System.arraycopy(pcm, 0, truncated, 0, length);
+                pcm = truncated;
+            }
+            return new AlarmTone(source, pcm, sampleRate, channelCount);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    @Nullable
+    private static AlarmTone readCacheFile(Context context) {
+        File file = new File(context.getCacheDir(), CACHE_FILE_NAME);
+        if (!file.exists())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CACHE_FILE_VERSION)
+                return null;
+            String source = in.readUTF();
+            int sampleRate = in.readInt();
+            int channelCount = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_PCM_BYTES)
+                return null;
+            byte[] pcm = new byte[length];
+            in.readFully(pcm);
+            return new AlarmTone(source, pcm, sampleRate, channelCount);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read cached alarm tone", e);
+            return null;
+        }
+    }
+
+    private static void writeCacheFile(Context context, AlarmTone tone) {
+        File file = new File(context.getCacheDir(), CACHE_FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(CACHE_FILE_VERSION);
+            out.writeUTF(tone.source);
+            out.writeInt(tone.sampleRate);
+            out.writeInt(tone.channelCount);
+            out.writeInt(tone.pcm.length);
+            out.write(tone.pcm);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not cache alarm tone", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
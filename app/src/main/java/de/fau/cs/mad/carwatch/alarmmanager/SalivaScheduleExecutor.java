@@ -0,0 +1,102 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.preference.PreferenceManager;
+
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.alarmmanager.SchedulePlanner.PlannedAlarm;
+import de.fau.cs.mad.carwatch.db.Alarm;
+import de.fau.cs.mad.carwatch.util.AlarmRepository;
+
+/**
+ * Applies a day plan of the {@link SchedulePlanner}: compares it with the saliva alarms in the
+ * database and only inserts, updates, schedules or cancels the alarms that differ, instead of
+ * deleting and re-creating all of them. Which alarms are registered with the AlarmManager is
+ * taken from the {@link AlarmRegistry}.
+ */
+class SalivaScheduleExecutor {
+
+    private static final String TAG = SalivaScheduleExecutor.class.getSimpleName();
+
+    private SalivaScheduleExecutor() {
+    }
+
+    /**
+     * @param existingAlarms all alarms in the database, including the wake-up alarm (which is not
+     *                       touched)
+     * @param plan           the saliva alarms that should be scheduled
+     */
+    static void apply(Context context, AlarmRepository repository, List<Alarm> existingAlarms, List<PlannedAlarm> plan) {
+        SparseArray<PlannedAlarm> plannedById = new SparseArray<>(plan.size());
+        for (PlannedAlarm plannedAlarm : plan) {
+            plannedById.put(plannedAlarm.alarmId, plannedAlarm);
+        }
+
+        int numUnchanged = 0;
+        int numUpdated = 0;
+        int numDeleted = 0;
+
+        for (Alarm alarm : existingAlarms) {
+            if (alarm.getId() == Constants.EXTRA_ALARM_ID_INITIAL)
+                continue;
+
+            PlannedAlarm plannedAlarm = plannedById.get(alarm.getId());
+            plannedById.remove(alarm.getId());
+
+            if (plannedAlarm == null) {
+                alarm.setActive(false);
+                AlarmHandler.cancelAlarm(context, alarm, null);
+                repository.delete(alarm);
+                numDeleted++;
+            } else if (matches(alarm, plannedAlarm)) {
+                // already in the database, only registered if the AlarmManager lost it (e.g.,
+                // after a reboot or force-stop)
+                if (!AlarmRegistry.isRegistered(context, alarm.getId(), alarm.getTimeToNextRing().getMillis()))
+                    AlarmHandler.scheduleSalivaAlarm(context, alarm, null);
+                numUnchanged++;
+            } else {
+                // re-scheduling replaces a registered alarm with the same id
+                alarm.setTime(plannedAlarm.time);
+                alarm.setSalivaId(plannedAlarm.salivaId);
+                alarm.setIsFixed(plannedAlarm.isFixed);
+                alarm.setActive(true);
+                alarm.setWasSampleTaken(false);
+                repository.update(alarm);
+                AlarmHandler.scheduleSalivaAlarm(context, alarm, null);
+                numUpdated++;
+            }
+        }
+
+        // planned alarms that are not in the database yet
+        for (int i = 0; i < plannedById.size(); i++) {
+            PlannedAlarm plannedAlarm = plannedById.valueAt(i);
+            Alarm alarm = new Alarm(plannedAlarm.time, true, plannedAlarm.isFixed, plannedAlarm.alarmId, plannedAlarm.salivaId, false);
+            repository.insert(alarm);
+            AlarmHandler.scheduleSalivaAlarm(context, alarm, null);
+        }
+
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        sp.edit().putInt(Constants.PREF_CURRENT_ALARM_ID, SchedulePlanner.FIRST_SALIVA_ALARM_ID + plan.size()).apply();
+
+        Log.d(TAG, "Saliva alarms: " + numUnchanged + " unchanged, " + numUpdated + " updated, "
+                + plannedById.size() + " inserted, " + numDeleted + " deleted");
+    }
+
+    /**
+     * Returns whether the alarm is active, has not been handled yet and rings as planned.
+     */
+    private static boolean matches(Alarm alarm, PlannedAlarm plannedAlarm) {
+        return alarm.isActive()
+                && !alarm.wasSampleTaken()
+                && alarm.getSalivaId() == plannedAlarm.salivaId
+                && alarm.isFixed() == plannedAlarm.isFixed
+                && alarm.getTime() != null
+                && alarm.getTime().getMillis() == plannedAlarm.time.getMillis();
+    }
+}
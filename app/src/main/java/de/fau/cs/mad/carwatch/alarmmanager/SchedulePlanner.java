@@ -0,0 +1,114 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+/**
+ * Plans the saliva alarms of a study day from the study configuration, i.e., the time distances
+ * between the relative alarms ({@link Constants#PREF_SALIVA_DISTANCES}) and the fixed alarm times
+ * ({@link Constants#PREF_SALIVA_TIMES}).
+ *
+ * <p>The planner has no Android dependencies and does not read the system clock: the current time
+ * is passed to {@link #plan(DateTime)}, so the same configuration and time always result in the
+ * same plan. Scheduling the plan is up to the {@link SalivaScheduleExecutor}.
+ */
+public class SchedulePlanner {
+
+    /**
+     * A single alarm of the day plan. Immutable.
+     */
+    public static final class PlannedAlarm {
+
+        public final int alarmId;
+        public final int salivaId;
+        public final DateTime time;
+        public final boolean isFixed;
+
+        PlannedAlarm(int alarmId, int salivaId, DateTime time, boolean isFixed) {
+            this.alarmId = alarmId;
+            this.salivaId = salivaId;
+            this.time = time;
+            this.isFixed = isFixed;
+        }
+
+        @Override
+        public String toString() {
+            return "PlannedAlarm <" + alarmId + "> saliva id: " + salivaId + ", time: " + time + (isFixed ? " (fixed)" : "");
+        }
+    }
+
+    /**
+     * Id of the first saliva alarm, the wake-up alarm uses {@link Constants#EXTRA_ALARM_ID_INITIAL}.
+     */
+    public static final int FIRST_SALIVA_ALARM_ID = Constants.EXTRA_ALARM_ID_INITIAL + 1;
+
+    private final List<Integer> timeDistances = new ArrayList<>();
+    private final List<LocalTime> fixedTimes = new ArrayList<>();
+    private final boolean firstSampleAtWakeUp;
+
+    /**
+     * @param timeDistancesString comma-separated distances in minutes between consecutive relative
+     *                            alarms, starting at the wake-up time
+     * @param fixedTimesString    comma-separated fixed alarm times in HHmm format
+     */
+    public SchedulePlanner(String timeDistancesString, String fixedTimesString) {
+        for (String distanceString : timeDistancesString.split(",")) {
+            if (distanceString.isEmpty() || distanceString.equals("0"))
+                continue;
+            timeDistances.add(Integer.parseInt(distanceString));
+        }
+        for (String timeRaw : fixedTimesString.split(",")) {
+            if (timeRaw.isEmpty())
+                continue;
+            String time = timeRaw.substring(0, 2) + ":" + timeRaw.substring(2);
+            fixedTimes.add(LocalTime.parse(time));
+        }
+        // if first sample request has no offset, it is taken with the wake-up alarm
+        firstSampleAtWakeUp = timeDistancesString.startsWith("0");
+    }
+
+    /**
+     * Returns the saliva alarms of the day starting at the given (wake-up) time: first the relative
+     * alarms, then the fixed alarms.
+     *
+     * <p>Relative alarms are a fixed number of minutes apart, also across DST transitions. Fixed
+     * alarms keep their wall-clock time on the day of {@code now}; a time that does not exist on
+     * that day (as it falls into a DST gap) is moved forward by the length of the gap, a time that
+     * exists twice keeps the UTC offset of {@code now}.
+     *
+     * @return the immutable day plan
+     */
+    public List<PlannedAlarm> plan(DateTime now) {
+        List<PlannedAlarm> plan = new ArrayList<>(timeDistances.size() + fixedTimes.size());
+        int alarmId = FIRST_SALIVA_ALARM_ID;
+        int salivaId = firstSampleAtWakeUp ? Constants.EXTRA_SALIVA_ID_INITIAL + 1 : Constants.EXTRA_SALIVA_ID_INITIAL;
+
+        DateTime lastAlarmTime = now;
+        for (int distance : timeDistances) {
+            lastAlarmTime = lastAlarmTime.plusMinutes(distance);
+            plan.add(new PlannedAlarm(alarmId++, salivaId++, lastAlarmTime, false));
+        }
+
+        for (LocalTime fixedTime : fixedTimes) {
+            plan.add(new PlannedAlarm(alarmId++, salivaId++, atTimeOfDay(now, fixedTime), true));
+        }
+        return Collections.unmodifiableList(plan);
+    }
+
+    private static DateTime atTimeOfDay(DateTime day, LocalTime time) {
+        DateTimeZone zone = day.getZone();
+        LocalDateTime localDateTime = day.toLocalDate().toLocalDateTime(time);
+        long localMillis = localDateTime.toDateTime(DateTimeZone.UTC).getMillis();
+        // non-strict conversion shifts times in a DST gap instead of throwing, ambiguous times
+        // (DST overlap) keep the offset of the given day if possible
+        return new DateTime(zone.convertLocalToUTC(localMillis, false, day.getMillis()), zone);
+    }
+}
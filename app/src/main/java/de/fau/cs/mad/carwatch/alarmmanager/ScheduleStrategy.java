@@ -0,0 +1,127 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+/**
+ * The ways an alarm can be registered with the AlarmManager, from the most to the least reliable.
+ *
+ * <p>Exact alarms (including alarm clocks) need the exact alarm permission since Android 12,
+ * which the user can revoke on Android 12L and lower. Without it, alarms are registered inexactly
+ * instead of not at all, and the strategy used is passed to the receiver, so that the delay between
+ * the planned and the actual fire time can be attributed to it.
+ */
+enum ScheduleStrategy {
+
+    /**
+     * Shown to the user as upcoming alarm and exempt from Doze.
+     */
+    ALARM_CLOCK,
+    /**
+     * Exact and allowed to fire in Doze, but rate-limited by the system.
+     */
+    EXACT_ALLOW_WHILE_IDLE,
+    /**
+     * Exact, but deferred until the next maintenance window in Doze. Used before Android 6.
+     */
+    EXACT,
+    /**
+     * May fire with a delay of several minutes, used if exact alarms are not allowed.
+     */
+    INEXACT_ALLOW_WHILE_IDLE;
+
+    /**
+     * Returns the strategy for alarms the participant is woken up or reminded by.
+     */
+    static ScheduleStrategy forAlarm(AlarmManager alarmManager) {
+        return forAlarm(canScheduleExactAlarms(alarmManager));
+    }
+
+    static ScheduleStrategy forAlarm(boolean canScheduleExactAlarms) {
+        return canScheduleExactAlarms ? ALARM_CLOCK : INEXACT_ALLOW_WHILE_IDLE;
+    }
+
+    /**
+     * Returns the strategy for the countdown timer of a saliva sample.
+     */
+    static ScheduleStrategy forTimer(AlarmManager alarmManager) {
+        return forTimer(Build.VERSION.SDK_INT, canScheduleExactAlarms(alarmManager));
+    }
+
+    static ScheduleStrategy forTimer(int sdkInt, boolean canScheduleExactAlarms) {
+        if (!canScheduleExactAlarms)
+            return INEXACT_ALLOW_WHILE_IDLE;
+        return sdkInt >= Build.VERSION_CODES.M ? EXACT_ALLOW_WHILE_IDLE : EXACT;
+    }
+
+    /**
+     * Adds the planned trigger time and this strategy to the intent of the alarm's receiver.
+     */
+    void putExtras(Intent intent, long triggerAtMillis) {
+        intent.putExtra(Constants.EXTRA_PLANNED_TRIGGER_TIME, triggerAtMillis);
+        intent.putExtra(Constants.EXTRA_SCHEDULE_STRATEGY, name());
+    }
+
+    /**
+     * Adds the strategy an alarm was registered with and the delay between its planned and actual
+     * fire time to the log entry. Alarms registered by older app versions carry neither.
+     *
+     * @param fireTime time the receiver was called, in milliseconds from epoch
+     */
+    static void putFireDelay(JSONObject json, Intent intent, long fireTime) throws JSONException {
+        Long plannedTime = null;
+        if (intent.hasExtra(Constants.EXTRA_PLANNED_TRIGGER_TIME))
+            plannedTime = intent.getLongExtra(Constants.EXTRA_PLANNED_TRIGGER_TIME, fireTime);
+        putFireDelay(json, plannedTime, intent.getStringExtra(Constants.EXTRA_SCHEDULE_STRATEGY), fireTime);
+    }
+
+    /**
+     * @param plannedTime trigger time passed to the receiver, null if the alarm carries none
+     * @param strategy    name of the strategy passed to the receiver
+     */
+    static void putFireDelay(JSONObject json, @Nullable Long plannedTime, @Nullable String strategy, long fireTime) throws JSONException {
+        if (plannedTime == null)
+            return;
+        json.put(Constants.LOGGER_EXTRA_FIRE_DELAY, fireTime - plannedTime);
+        json.put(Constants.LOGGER_EXTRA_SCHEDULE_STRATEGY, strategy);
+    }
+
+    private static boolean canScheduleExactAlarms(AlarmManager alarmManager) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms();
+    }
+
+    /**
+     * Registers the operation to be triggered at the given time.
+     *
+     * @param showIntent intent shown with the alarm clock info, only used by {@link #ALARM_CLOCK}
+     */
+    void schedule(AlarmManager alarmManager, long triggerAtMillis, PendingIntent operation, @Nullable PendingIntent showIntent) {
+        switch (this) {
+            case ALARM_CLOCK:
+                alarmManager.setAlarmClock(new AlarmManager.AlarmClockInfo(triggerAtMillis, showIntent), operation);
+                break;
+            case EXACT_ALLOW_WHILE_IDLE:
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation);
+                break;
+            case EXACT:
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation);
+                break;
+            case INEXACT_ALLOW_WHILE_IDLE:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation);
+                } else {
+                    alarmManager.set(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation);
+                }
+                break;
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package de.fau.cs.mad.carwatch.alarmmanager;
 
-import android.annotation.SuppressLint;
 import android.app.AlarmManager;
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
@@ -24,11 +22,11 @@ import de.fau.cs.mad.carwatch.R;
 import de.fau.cs.mad.carwatch.db.Alarm;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.ui.BarcodeActivity;
+import de.fau.cs.mad.carwatch.util.NotificationChannels;
 
 public class TimerHandler {
 
     private static final String TAG = TimerHandler.class.getSimpleName();
-    private static final String CHANNEL_ID = TAG + "Channel";
 
     public static void finishDay(Context context) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
@@ -54,27 +52,21 @@ public class TimerHandler {
         scheduleSalivaCountdown(context, alarm.getId(), alarm.getSalivaId());
     }
 
-    @SuppressLint("WrongConstant")
     public static void scheduleSalivaCountdown(Context context, int alarmId, int salivaId) {
         int timerId = alarmId + Constants.ALARM_OFFSET_TIMER;
         long when = DateTime.now().plusMinutes(Constants.TIMER_DURATION).getMillis();
 
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-
-        // Create and add notification channel
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            if (notificationManager != null) {
-                NotificationChannel channel = new NotificationChannel(CHANNEL_ID, TAG, NotificationManager.IMPORTANCE_MAX);
-                notificationManager.createNotificationChannel(channel);
-            }
-        }
+        NotificationManager notificationManager = AlarmScheduler.getNotificationManager(context);
+        AlarmManager alarmManager = AlarmScheduler.getAlarmManager(context);
 
         Notification notification = buildCountdownNotification(context, timerId, salivaId, when);
+        // the timer rings in a few minutes
+        AlarmTone.preload(context);
 
         if (alarmManager != null) {
-            PendingIntent pendingIntent = getTimerPendingIntent(context, timerId, salivaId);
-            alarmManager.setExact(AlarmManager.RTC_WAKEUP, when, pendingIntent);
+            ScheduleStrategy strategy = ScheduleStrategy.forTimer(alarmManager);
+            PendingIntent pendingIntent = getTimerPendingIntent(context, timerId, salivaId, when, strategy);
+            strategy.schedule(alarmManager, when, pendingIntent, null);
         }
 
         if (notificationManager != null) {
@@ -86,8 +78,8 @@ public class TimerHandler {
     public static void cancelTimer(Context context, int alarmId) {
         int timerId = alarmId + Constants.ALARM_OFFSET_TIMER;
         // Dismiss notification
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        NotificationManager notificationManager = AlarmScheduler.getNotificationManager(context);
+        AlarmManager alarmManager = AlarmScheduler.getAlarmManager(context);
 
         // Get PendingIntent to TimerReceiver Broadcast channel
         Intent intent = new Intent(context, TimerReceiver.class);
@@ -138,16 +130,10 @@ public class TimerHandler {
                         context.getString(R.string.timer_notification_text_evening) :
                         context.getString(R.string.timer_notification_text, salivaId + startSampleIdx);
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setDefaults(Notification.DEFAULT_ALL)
+        NotificationCompat.Builder builder = NotificationChannels.newAlarmBuilder(context, NotificationChannels.CHANNEL_TIMER_COUNTDOWN)
                 .setWhen(when)
                 .setUsesChronometer(true)
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setOngoing(true)
                 .setContentIntent(contentPendingIntent)
-                .setSmallIcon(R.drawable.ic_alarm_white_24dp)
-                .setContentTitle(context.getString(R.string.app_name))
                 .setContentText(contentText);
 
         return builder.build();
@@ -181,15 +167,7 @@ public class TimerHandler {
         Intent stopAlarmIntent = new Intent(context, TimerStopReceiver.class);
         PendingIntent stopAlarmPendingIntent = PendingIntent.getBroadcast(context, 0, stopAlarmIntent, pendingFlags);
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setDefaults(Notification.DEFAULT_ALL)
-                .setWhen(System.currentTimeMillis())
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setOngoing(true)
-                .setVibrate(Constants.VIBRATION_PATTERN)
-                .setSmallIcon(R.drawable.ic_alarm_white_24dp)
-                .setContentTitle(context.getString(R.string.app_name))
+        NotificationCompat.Builder builder = NotificationChannels.newAlarmBuilder(context, NotificationChannels.CHANNEL_TIMER_COUNTDOWN)
                 .setContentText(contentText)
                 .addAction(R.drawable.ic_stop_white_24dp, context.getString(R.string.stop), stopAlarmPendingIntent)
                 .addAction(R.drawable.ic_barcode_scanner_24dp, context.getString(R.string.open_scanner), fullScreenPendingIntent)
@@ -198,11 +176,12 @@ public class TimerHandler {
         return builder.build();
     }
 
-    private static PendingIntent getTimerPendingIntent(Context context, int timerId, int salivaId) {
+    private static PendingIntent getTimerPendingIntent(Context context, int timerId, int salivaId, long when, ScheduleStrategy strategy) {
         // Get PendingIntent to TimerReceiver Broadcast
         Intent intent = new Intent(context, TimerReceiver.class);
         intent.putExtra(Constants.EXTRA_TIMER_ID, timerId);
         intent.putExtra(Constants.EXTRA_SALIVA_ID, salivaId);
+        strategy.putExtras(intent, when);
 
         int pendingFlags;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -1,20 +1,27 @@
 package de.fau.cs.mad.carwatch.alarmmanager;
 
-import android.annotation.SuppressLint;
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.barcodedetection.ScannerWarmup;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.util.Utils;
 
-import static android.os.Build.VERSION;
-import static android.os.Build.VERSION_CODES;
-
 import androidx.preference.PreferenceManager;
 
 /**
@@ -23,22 +30,28 @@ import androidx.preference.PreferenceManager;
 public class TimerReceiver extends BroadcastReceiver {
 
     private static final String TAG = TimerReceiver.class.getSimpleName();
+    private static final Executor backgroundExecutor = Executors.newSingleThreadExecutor();
 
-    private static final String CHANNEL_ID = "TimerReceiverChannel";
-
-    @SuppressLint("WrongConstant")
     @Override
     public void onReceive(Context context, Intent intent) {
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-
-
-        // Create and add notification channel
-        if (VERSION.SDK_INT >= VERSION_CODES.O) {
-            if (notificationManager != null) {
-                NotificationChannel channel = new NotificationChannel(CHANNEL_ID, TAG, NotificationManager.IMPORTANCE_MAX);
-                notificationManager.createNotificationChannel(channel);
+        long fireTime = System.currentTimeMillis();
+        // held until the timer sound has started playing
+        WakeLockManager.Section wakeLock = WakeLockManager.acquire(context, TAG, Constants.WAKE_LOCK_TIMEOUT);
+        Future<Long> soundStarted = onTimerRinging(context, intent, fireTime);
+
+        PendingResult pendingResult = goAsync();
+        backgroundExecutor.execute(() -> {
+            try {
+                AlarmSoundControl.awaitCommand(soundStarted);
+            } finally {
+                pendingResult.finish();
+                wakeLock.release();
             }
-        }
+        });
+    }
+
+    private Future<Long> onTimerRinging(Context context, Intent intent, long fireTime) {
+        NotificationManager notificationManager = AlarmScheduler.getNotificationManager(context);
 
         int timerId = intent.getIntExtra(Constants.EXTRA_TIMER_ID, Constants.EXTRA_TIMER_ID_INITIAL);
         int salivaId = intent.getIntExtra(Constants.EXTRA_SALIVA_ID, Constants.EXTRA_SALIVA_ID_INITIAL);
@@ -47,7 +60,10 @@ public class TimerReceiver extends BroadcastReceiver {
 
         // Play alarm ringing sound
         AlarmSoundControl alarmSoundControl = AlarmSoundControl.getInstance();
-        alarmSoundControl.playAlarmSound(context);
+        Future<Long> soundStarted = alarmSoundControl.playAlarmSound(context, timerId);
+
+        // the barcode scanner is opened once the timer alarm is stopped
+        ScannerWarmup.warmUp(context, Barcode.FORMAT_EAN_8);
 
         if (notificationManager != null) {
             notificationManager.notify(timerId, notification);
@@ -55,6 +71,18 @@ public class TimerReceiver extends BroadcastReceiver {
 
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
         sp.edit().putBoolean(Constants.PREF_TIMER_NOTIFICATION_IS_SHOWN, true).apply();
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_ALARM_ID, timerId);
+            json.put(Constants.LOGGER_EXTRA_SALIVA_ID, salivaId);
+            ScheduleStrategy.putFireDelay(json, intent, fireTime);
+            LoggerUtil.log(Constants.LOGGER_ACTION_TIMER_RING, json);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error while creating JSON object for logger for timer with ID " + timerId);
+            e.printStackTrace();
+        }
+        return soundStarted;
     }
 
 
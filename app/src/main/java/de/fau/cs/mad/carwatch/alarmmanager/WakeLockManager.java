@@ -0,0 +1,123 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import org.joda.time.LocalDate;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
+
+/**
+ * Holds a partial wake lock while an alarm critical section runs, so that the CPU can't suspend
+ * before the work of a receiver (including the work it continues in the background) is done.
+ *
+ * <p>Every wake lock is acquired with a timeout. The time each section held the lock is added up
+ * per day, and the summary of a day is logged with the first section of the next day.
+ */
+final class WakeLockManager {
+
+    private static final String TAG = WakeLockManager.class.getSimpleName();
+
+    private static final String WAKE_LOCK_TAG_PREFIX = "carwatch:";
+
+    private WakeLockManager() {
+    }
+
+    /**
+     * A critical section holding a wake lock. Must be ended with {@link #release()}.
+     */
+    static final class Section {
+
+        private final Context context;
+        private final String name;
+        private final PowerManager.WakeLock wakeLock;
+        private final long timeout;
+        private final long startTime;
+        private boolean released = false;
+
+        private Section(Context context, String name, PowerManager.WakeLock wakeLock, long timeout) {
+            this.context = context;
+            this.name = name;
+            this.wakeLock = wakeLock;
+            this.timeout = timeout;
+            this.startTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Releases the wake lock and records how long it was held. Calling it more than once has
+         * no effect.
+         */
+        synchronized void release() {
+            if (released)
+                return;
+            released = true;
+            if (wakeLock == null)
+                return;
+
+            boolean timedOut = !wakeLock.isHeld();
+            long heldTime = WakeLockStats.getHeldTime(SystemClock.elapsedRealtime() - startTime, timeout, timedOut);
+            if (timedOut) {
+                // the lock was released by its timeout already
+                Log.w(TAG, "Wake lock of " + name + " timed out after " + timeout + " ms");
+            } else {
+                wakeLock.release();
+            }
+            Log.d(TAG, name + " held wake lock for " + heldTime + " ms");
+            record(context, heldTime, timedOut);
+        }
+    }
+
+    /**
+     * Acquires a partial wake lock for the critical section with the given name.
+     *
+     * @param timeout time after which the wake lock is released in any case, in ms
+     */
+    static Section acquire(Context context, String name, long timeout) {
+        Context appContext = context.getApplicationContext();
+        PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = null;
+        if (powerManager != null) {
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG_PREFIX + name);
+            wakeLock.setReferenceCounted(false);
+            wakeLock.acquire(timeout);
+        } else {
+            Log.e(TAG, "Could not acquire wake lock for " + name + ": powerManager is null");
+        }
+        return new Section(appContext, name, wakeLock, timeout);
+    }
+
+    /**
+     * Adds the held time to the total of the current day. If the stored total belongs to an
+     * earlier day, its summary is logged.
+     */
+    private static synchronized void record(Context context, long heldTime, boolean timedOut) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        WakeLockStats.Summary summary = WakeLockStats.record(sp, LocalDate.now(), heldTime, timedOut);
+        if (summary != null) {
+            logSummary(summary);
+        }
+    }
+
+    private static void logSummary(WakeLockStats.Summary summary) {
+        Log.d(TAG, "Wake locks on " + summary.day + ": " + summary.numSections + " sections, " + summary.totalTime + " ms");
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_DAY, summary.day);
+            json.put(Constants.LOGGER_EXTRA_DURATION, summary.totalTime);
+            json.put(Constants.LOGGER_EXTRA_MAX_DURATION, summary.maxTime);
+            json.put(Constants.LOGGER_EXTRA_NUM_SECTIONS, summary.numSections);
+            json.put(Constants.LOGGER_EXTRA_NUM_TIMEOUTS, summary.numTimeouts);
+            LoggerUtil.log(Constants.LOGGER_ACTION_WAKE_LOCK_SUMMARY, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+/**
+ * Adds up the time the critical sections of {@link WakeLockManager} held their wake lock, per day.
+ * The totals of the current day are stored in the SharedPreferences.
+ *
+ * <p>The current day is passed in instead of being read from the system clock, so that the day
+ * rollover can be driven from JVM tests.
+ */
+final class WakeLockStats {
+
+    /**
+     * The totals of one day.
+     */
+    static final class Summary {
+
+        final String day;
+        final long totalTime;
+        final long maxTime;
+        final int numSections;
+        final int numTimeouts;
+
+        Summary(String day, long totalTime, long maxTime, int numSections, int numTimeouts) {
+            this.day = day;
+            this.totalTime = totalTime;
+            this.maxTime = maxTime;
+            this.numSections = numSections;
+            this.numTimeouts = numTimeouts;
+        }
+    }
+
+    private WakeLockStats() {
+    }
+
+    /**
+     * Returns the time a section held its wake lock. A lock that was released by its timeout was
+     * held for the timeout at most, no matter how late the section ended.
+     *
+     * @param elapsedTime time since the lock was acquired
+     * @param timedOut    whether the lock was released by its timeout
+     */
+    static long getHeldTime(long elapsedTime, long timeout, boolean timedOut) {
+        return timedOut ? Math.min(elapsedTime, timeout) : elapsedTime;
+    }
+
+    /**
+     * Adds a section to the totals of the given day. If the stored totals belong to another day,
+     * they are reset and returned, so that their summary can be logged.
+     *
+     * @return the totals of the previous day, or null if the stored totals belong to today
+     */
+    @Nullable
+    static Summary record(SharedPreferences sp, LocalDate today, long heldTime, boolean timedOut) {
+        String todayString = today.toString();
+        String day = sp.getString(Constants.PREF_WAKE_LOCK_DAY, todayString);
+
+        long totalTime = sp.getLong(Constants.PREF_WAKE_LOCK_TOTAL_TIME, 0);
+        long maxTime = sp.getLong(Constants.PREF_WAKE_LOCK_MAX_TIME, 0);
+        int numSections = sp.getInt(Constants.PREF_WAKE_LOCK_NUM_SECTIONS, 0);
+        int numTimeouts = sp.getInt(Constants.PREF_WAKE_LOCK_NUM_TIMEOUTS, 0);
+
+        Summary summary = null;
+        if (!day.equals(todayString)) {
+            summary = new Summary(day, totalTime, maxTime, numSections, numTimeouts);
+            totalTime = 0;
+            maxTime = 0;
+            numSections = 0;
+            numTimeouts = 0;
+        }
+
+        sp.edit()
+                .putString(Constants.PREF_WAKE_LOCK_DAY, todayString)
+                .putLong(Constants.PREF_WAKE_LOCK_TOTAL_TIME, totalTime + heldTime)
+                .putLong(Constants.PREF_WAKE_LOCK_MAX_TIME, Math.max(maxTime, heldTime))
+                .putInt(Constants.PREF_WAKE_LOCK_NUM_SECTIONS, numSections + 1)
+                .putInt(Constants.PREF_WAKE_LOCK_NUM_TIMEOUTS, timedOut ? numTimeouts + 1 : numTimeouts)
+                .apply();
+        return summary;
+    }
+}
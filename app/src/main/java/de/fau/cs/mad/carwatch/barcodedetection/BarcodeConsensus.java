@@ -0,0 +1,78 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+/**
+ * Accumulates the barcode values read in consecutive frames and reports a value once it was read
+ * in at least {@code voteThreshold} of the most recent {@code windowSize} frames.
+ *
+ * <p>Frames without a barcode also occupy a slot of the ring buffer, so stale reads age out if the
+ * barcode leaves the reticle.
+ */
+public class BarcodeConsensus {
+
+    public static final int DEFAULT_VOTE_THRESHOLD = 3;
+    public static final int DEFAULT_WINDOW_SIZE = 8;
+
+    private final int voteThreshold;
+    private final String[] window;
+    private int head = 0;
+    private int frameCount = 0;
+
+    public BarcodeConsensus() {
+        this(DEFAULT_VOTE_THRESHOLD, DEFAULT_WINDOW_SIZE);
+    }
+
+    public BarcodeConsensus(int voteThreshold, int windowSize) {
+        if (voteThreshold < 1 || windowSize < voteThreshold) {
+            throw new IllegalArgumentException(
+                    "Invalid vote threshold " + voteThreshold + " for window size " + windowSize);
+        }
+        this.voteThreshold = voteThreshold;
+        this.window = new String[windowSize];
+    }
+
+    /**
+     * Adds the value read in the current frame.
+     *
+     * @param value the barcode value, or {@code null} if no barcode was read in this frame
+     * @return the value if it reached the vote threshold with this frame, {@code null} otherwise
+     */
+    public String addVote(String value) {
+        frameCount++;
+        window[head] = value;
+        head = (head + 1) % window.length;
+
+        if (value == null) {
+            return null;
+        }
+
+        int votes = 0;
+        for (String vote : window) {
+            if (value.equals(vote)) {
+                votes++;
+            }
+        }
+        return votes >= voteThreshold ? value : null;
+    }
+
+    /**
+     * Returns the number of frames added since the last reset.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getVoteThreshold() {
+        return voteThreshold;
+    }
+
+    /**
+     * Discards all votes, e.g., after a value was committed.
+     */
+    public void reset() {
+        for (int i = 0; i < window.length; i++) {
+            window[i] = null;
+        }
+        head = 0;
+        frameCount = 0;
+    }
+}
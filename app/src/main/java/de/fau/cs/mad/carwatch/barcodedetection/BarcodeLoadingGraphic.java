@@ -33,6 +33,7 @@ class BarcodeLoadingGraphic extends BarcodeGraphicBase {
     private final PointF[] boxClockwiseCoordinates;
     private final Point[] coordinateOffsetBits;
     private final PointF lastPathPoint = new PointF();
+    private final Path path = new Path();
 
     BarcodeLoadingGraphic(GraphicOverlay overlay, ValueAnimator loadingAnimator, int barcodeFormat) {
         super(overlay, barcodeFormat);
@@ -52,7 +53,7 @@ class BarcodeLoadingGraphic extends BarcodeGraphicBase {
         super.draw(canvas);
 
         float boxPerimeter = (boxRect.width() + boxRect.height()) * 2;
-        Path path = new Path();
+        path.reset();
         // The distance between the box's left-top corner and the starting point of white colored path.
         float offsetLen = (boxPerimeter * (float) loadingAnimator.getAnimatedValue()) % boxPerimeter;
         int i;
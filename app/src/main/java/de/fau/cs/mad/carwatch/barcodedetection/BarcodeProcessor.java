@@ -17,102 +17,227 @@
 package de.fau.cs.mad.carwatch.barcodedetection;
 
 import android.animation.ValueAnimator;
-import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
 
 import com.google.android.gms.tasks.Task;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
-import com.google.mlkit.vision.barcode.common.Barcode;
-import com.google.mlkit.vision.common.InputImage;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.barcodedetection.ScanSessionEngine.UiState;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.CameraReticleAnimator;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameProcessorBase;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.GraphicOverlay;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.WorkflowModel;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.WorkflowModel.WorkflowState;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 
 /**
  * A processor to run the barcode detector.
+ *
+ * <p>Detection results are handled by a {@link ScanSessionEngine} on a dedicated background
+ * thread. Only the resulting UI state is handed to the main thread, coalesced to at most one update
+ * per animation frame.
  */
-public class BarcodeProcessor extends FrameProcessorBase<List<Barcode>> {
+public class BarcodeProcessor extends FrameProcessorBase<List<DetectedBarcode>> {
 
     private static final String TAG = BarcodeProcessor.class.getSimpleName();
 
-    BarcodeScannerOptions options;
-    private final BarcodeScanner scanner;
+    /**
+     * Duration of the loading animation that is played after a barcode was confirmed by the
+     * consensus, before the barcode is reported.
+     */
+    private static final long LOADING_ANIMATION_DURATION_MS = 500;
+
+    private final ScannerSession scannerSession;
+    private final Detector detector;
+    private final ScanSessionEngine engine;
+    private final HandlerThread engineThread;
+    private final Handler engineHandler;
+    private final Executor engineExecutor;
+
+    private final GraphicOverlay graphicOverlay;
     private final WorkflowModel workflowModel;
     private final CameraReticleAnimator cameraReticleAnimator;
     private final int barcodeFormat;
 
+    private final ValueAnimator loadingAnimator;
+
+    // Latest UI state produced by the engine that has not been applied yet.
+    private final AtomicReference<UiState> pendingUiState = new AtomicReference<>();
+    private final Runnable applyPendingUiState = this::applyPendingUiState;
+
+    // Graphics are retained across frames and recreated only if the overlay size changes.
+    private BarcodeReticleGraphic reticleGraphic;
+    private BarcodeLoadingGraphic loadingGraphic;
+    private int graphicsWidth;
+    private int graphicsHeight;
+
+    // Barcode reported once the loading animation has finished.
+    private DetectedBarcode acceptedBarcode;
+
+    // Last rejection passed to the workflow model, to report each rejection only once.
+    private BarcodeRejection lastAppliedRejection;
+
+    // Whether the detector was already initialized (by ScannerWarmup or a previous processor), and
+    // when this processor was created, to log the time until the first frame was processed.
+    private final boolean warmStart;
+    private final long startTime = SystemClock.elapsedRealtime();
+    private boolean firstFrameLogged = false;
+
+    private boolean stopped = false;
+
     public BarcodeProcessor(GraphicOverlay graphicOverlay, WorkflowModel workflowModel, int barcodeFormat) {
+        this(graphicOverlay, workflowModel, barcodeFormat, BarcodeValidator.ACCEPT_ALL);
+    }
+
+    public BarcodeProcessor(GraphicOverlay graphicOverlay, WorkflowModel workflowModel, int barcodeFormat, BarcodeValidator validator) {
+        this(graphicOverlay, workflowModel, barcodeFormat, validator, BarcodeConsensus.DEFAULT_VOTE_THRESHOLD);
+    }
+
+    /**
+     * @param barcodeFormat  format to scan for
+     * @param validator      checks barcodes once they were read reliably; rejected barcodes are
+     *                       reported via {@link WorkflowModel#rejectedBarcode} and scanning continues
+     * @param voteThreshold  number of agreeing reads (within the last
+     *                       {@link BarcodeConsensus#DEFAULT_WINDOW_SIZE} frames) needed before a
+     *                       barcode is accepted
+     */
+    public BarcodeProcessor(GraphicOverlay graphicOverlay, WorkflowModel workflowModel, int barcodeFormat, BarcodeValidator validator, int voteThreshold) {
+        // Two frames in flight, so that the next frame is already being decoded while the result of
+        // the previous one is handled.
+        super(MAX_FRAMES_IN_FLIGHT);
+        this.graphicOverlay = graphicOverlay;
         this.workflowModel = workflowModel;
+        BarcodeConsensus consensus = new BarcodeConsensus(voteThreshold, Math.max(voteThreshold, BarcodeConsensus.DEFAULT_WINDOW_SIZE));
+        this.engine = new ScanSessionEngine(consensus, validator);
         this.cameraReticleAnimator = new CameraReticleAnimator(graphicOverlay);
+        this.loadingAnimator = createLoadingAnimator(graphicOverlay);
         this.barcodeFormat = barcodeFormat;
-        options = new BarcodeScannerOptions.Builder()
-                .setBarcodeFormats(barcodeFormat)
-                .build();
-        scanner = BarcodeScanning.getClient(options);
+
+        this.engineThread = new HandlerThread(ScanSessionEngine.class.getSimpleName());
+        this.engineThread.start();
+        this.engineHandler = new Handler(engineThread.getLooper());
+        this.engineExecutor = engineHandler::post;
+
+        this.scannerSession = ScannerSession.acquire();
+        this.warmStart = scannerSession.isInitialized(barcodeFormat);
+        this.detector = scannerSession.getDetector(barcodeFormat);
     }
 
     @Override
-    protected Task<List<Barcode>> detectInImage(InputImage image) {
-        return scanner.process(image);
+    protected Task<List<DetectedBarcode>> detectInFrame(ByteBuffer data, FrameMetadata frameMetadata) {
+        return detector.detect(data, frameMetadata);
     }
 
+    @Override
+    protected Executor getResultExecutor() {
+        return engineExecutor;
+    }
 
-    @MainThread
+    @WorkerThread
     @Override
-    protected void onSuccess(InputImage image, List<Barcode> results, GraphicOverlay graphicOverlay) {
-        if (!workflowModel.isCameraLive()) {
+    protected void onSuccess(FrameMetadata frameMetadata, List<DetectedBarcode> results, GraphicOverlay graphicOverlay) {
+        if (!firstFrameLogged) {
+            firstFrameLogged = true;
+            logFirstFrame(SystemClock.elapsedRealtime() - startTime);
+        }
+
+        if (!results.isEmpty()) {
+            // Barcode candidates keep the camera from being paused for inactivity.
+            workflowModel.markScanActivity();
+        }
+
+        UiState uiState = engine.onResults(frameMetadata, results);
+        if (uiState == null) {
             return;
         }
+        if (uiState.workflowState == WorkflowState.SEARCHING) {
+            // No further detection needed, the camera is stopped by the SEARCHING state.
+            dropPendingFrame();
+        }
+
+        // Only one update is scheduled per animation frame, it applies the latest state.
+        if (pendingUiState.getAndSet(uiState) == null) {
+            graphicOverlay.postOnAnimation(applyPendingUiState);
+        }
+    }
 
-        // Picks the barcode, if exists, that covers the center of graphic overlay.
-        Barcode barcodeInCenter = null;
-        for (Barcode barcode : results) {
-            if (barcode.getBoundingBox() != null) {
-                RectF box = graphicOverlay.translateRect(barcode.getBoundingBox());
-                if (box.contains(graphicOverlay.getWidth() / 2f, graphicOverlay.getHeight() / 2f)) {
-                    barcodeInCenter = barcode;
-                    break;
-                }
+    @MainThread
+    private void applyPendingUiState() {
+        UiState uiState = pendingUiState.getAndSet(null);
+        if (uiState == null || stopped) {
+            return;
+        }
+        if (!workflowModel.isCameraLive()) {
+            if (uiState.workflowState == WorkflowState.SEARCHING) {
+                // The accepted barcode can no longer be shown, scan again once the camera is live.
+                engineHandler.post(engine::reset);
             }
+            return;
         }
 
-        graphicOverlay.clear();
-        if (barcodeInCenter == null) {
-            cameraReticleAnimator.start();
-            graphicOverlay.add(new BarcodeReticleGraphic(graphicOverlay, cameraReticleAnimator, barcodeFormat));
-            workflowModel.setWorkflowState(WorkflowState.DETECTING);
+        if (uiState.lastRejection != null && uiState.lastRejection != lastAppliedRejection) {
+            lastAppliedRejection = uiState.lastRejection;
+            workflowModel.rejectedBarcode.setValue(uiState.lastRejection);
+        }
 
+        // The overlay is only invalidated if the displayed graphic changes, the animators take care
+        // of redrawing while a graphic is shown.
+        updateGraphics(graphicOverlay);
+        if (uiState.workflowState == WorkflowState.DETECTING) {
+            cameraReticleAnimator.start();
+            graphicOverlay.show(reticleGraphic);
+            if (workflowModel.workflowState.getValue() != WorkflowState.DETECTING) {
+                workflowModel.setWorkflowState(WorkflowState.DETECTING);
+            }
         } else {
             cameraReticleAnimator.cancel();
-            ValueAnimator loadingAnimator = createLoadingAnimator(graphicOverlay, barcodeInCenter);
+            acceptedBarcode = uiState.acceptedBarcode;
+            graphicOverlay.show(loadingGraphic);
             loadingAnimator.start();
-            graphicOverlay.add(new BarcodeLoadingGraphic(graphicOverlay, loadingAnimator, barcodeFormat));
             workflowModel.setWorkflowState(WorkflowState.SEARCHING);
+        }
+    }
 
+    private void updateGraphics(GraphicOverlay graphicOverlay) {
+        if (reticleGraphic != null
+                && graphicsWidth == graphicOverlay.getWidth()
+                && graphicsHeight == graphicOverlay.getHeight()) {
+            return;
         }
-        graphicOverlay.invalidate();
+        graphicsWidth = graphicOverlay.getWidth();
+        graphicsHeight = graphicOverlay.getHeight();
+        reticleGraphic = new BarcodeReticleGraphic(graphicOverlay, cameraReticleAnimator, barcodeFormat);
+        loadingGraphic = new BarcodeLoadingGraphic(graphicOverlay, loadingAnimator, barcodeFormat);
     }
 
-    private ValueAnimator createLoadingAnimator(
-            GraphicOverlay graphicOverlay, Barcode barcode) {
+    private ValueAnimator createLoadingAnimator(GraphicOverlay graphicOverlay) {
         float endProgress = 1.1f;
         ValueAnimator loadingAnimator = ValueAnimator.ofFloat(0f, endProgress);
-        loadingAnimator.setDuration(2000);
+        loadingAnimator.setDuration(LOADING_ANIMATION_DURATION_MS);
         loadingAnimator.addUpdateListener(
                 animation -> {
-                    if (Float.compare((float) loadingAnimator.getAnimatedValue(), endProgress) >= 0) {
+                    if (Float.compare((float) animation.getAnimatedValue(), endProgress) >= 0) {
                         graphicOverlay.clear();
                         workflowModel.setWorkflowState(WorkflowState.SEARCHED);
-                        workflowModel.detectedBarcode.setValue(barcode);
+                        workflowModel.detectedBarcode.setValue(acceptedBarcode);
+                        // The barcode was handed over, scanning may start again (e.g., if the
+                        // barcode is rejected by the UI).
+                        engineHandler.post(engine::reset);
                     } else {
                         graphicOverlay.invalidate();
                     }
@@ -120,6 +245,18 @@ public class BarcodeProcessor extends FrameProcessorBase<List<Barcode>> {
         return loadingAnimator;
     }
 
+    private void logFirstFrame(long timeToFirstFrame) {
+        Log.d(TAG, (warmStart ? "Warm" : "Cold") + " start, first frame processed after " + timeToFirstFrame + " ms");
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_WARM_START, warmStart);
+            json.put(Constants.LOGGER_EXTRA_TIME_TO_FIRST_FRAME, timeToFirstFrame);
+            LoggerUtil.log(Constants.LOGGER_ACTION_SCANNER_FIRST_FRAME, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected void onFailure(Exception e) {
         Log.e(TAG, "Barcode detection failed!", e);
@@ -127,6 +264,13 @@ public class BarcodeProcessor extends FrameProcessorBase<List<Barcode>> {
 
     @Override
     public void stop() {
-        scanner.close();
+        // The detector is owned by the session, which closes it once no processor uses it anymore.
+        if (!stopped) {
+            stopped = true;
+            // Frames in flight are released once their detection completes.
+            dropPendingFrame();
+            scannerSession.release();
+            engineThread.quitSafely();
+        }
     }
 }
@@ -0,0 +1,25 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeChecker.BarcodeCheckResult;
+
+/**
+ * A barcode that was read reliably, but rejected by the {@link BarcodeValidator}.
+ */
+public class BarcodeRejection {
+
+    private final String value;
+    private final BarcodeCheckResult reason;
+
+    public BarcodeRejection(String value, BarcodeCheckResult reason) {
+        this.value = value;
+        this.reason = reason;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public BarcodeCheckResult getReason() {
+        return reason;
+    }
+}
@@ -40,6 +40,7 @@ class BarcodeReticleGraphic extends BarcodeGraphicBase {
     private final int rippleSizeOffset;
     private final int rippleStrokeWidth;
     private final int rippleAlpha;
+    private final RectF rippleRect = new RectF();
 
     BarcodeReticleGraphic(GraphicOverlay overlay, CameraReticleAnimator animator, int barcodeFormat) {
         super(overlay, barcodeFormat);
@@ -64,12 +65,11 @@ class BarcodeReticleGraphic extends BarcodeGraphicBase {
         ripplePaint.setAlpha((int) (rippleAlpha * animator.getRippleAlphaScale()));
         ripplePaint.setStrokeWidth(rippleStrokeWidth * animator.getRippleStrokeWidthScale());
         float offset = rippleSizeOffset * animator.getRippleSizeScale();
-        RectF rippleRect =
-                new RectF(
-                        boxRect.left - offset,
-                        boxRect.top - offset,
-                        boxRect.right + offset,
-                        boxRect.bottom + offset);
+        rippleRect.set(
+                boxRect.left - offset,
+                boxRect.top - offset,
+                boxRect.right + offset,
+                boxRect.bottom + offset);
         canvas.drawRoundRect(rippleRect, boxCornerRadius, boxCornerRadius, ripplePaint);
     }
 }
@@ -0,0 +1,20 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeChecker.BarcodeCheckResult;
+
+/**
+ * Checks barcode values inside the detection pipeline, so that invalid or duplicate barcodes are
+ * rejected without stopping the camera.
+ */
+public interface BarcodeValidator {
+
+    /**
+     * Accepts every barcode.
+     */
+    BarcodeValidator ACCEPT_ALL = barcode -> BarcodeCheckResult.VALID;
+
+    /**
+     * Checks the barcode.
+     */
+    BarcodeCheckResult validate(DetectedBarcode barcode);
+}
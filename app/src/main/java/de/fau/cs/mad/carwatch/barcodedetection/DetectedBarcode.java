@@ -0,0 +1,46 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+/**
+ * Detector-independent result of a barcode detection. Bounding boxes are given in the coordinate
+ * system of the upright (i.e., already rotated) camera frame, like ML Kit reports them.
+ */
+public class DetectedBarcode {
+
+    private final String rawValue;
+    private final int format;
+    @Nullable
+    private final Rect boundingBox;
+
+    public DetectedBarcode(String rawValue, int format, @Nullable Rect boundingBox) {
+        this.rawValue = rawValue;
+        this.format = format;
+        this.boundingBox = boundingBox;
+    }
+
+    public static DetectedBarcode fromMlKitBarcode(@NonNull Barcode barcode) {
+        return new DetectedBarcode(barcode.getRawValue(), barcode.getFormat(), barcode.getBoundingBox());
+    }
+
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    /**
+     * Returns the barcode format, using the ML Kit format constants (e.g., {@link Barcode#FORMAT_EAN_8}).
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    @Nullable
+    public Rect getBoundingBox() {
+        return boundingBox;
+    }
+}
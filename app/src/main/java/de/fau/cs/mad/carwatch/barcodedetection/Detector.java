@@ -0,0 +1,24 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import com.google.android.gms.tasks.Task;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
+
+/**
+ * A barcode detector operating on NV21 camera frames.
+ */
+public interface Detector {
+
+    /**
+     * Detects barcodes in the given NV21 frame.
+     */
+    Task<List<DetectedBarcode>> detect(ByteBuffer data, FrameMetadata frameMetadata);
+
+    /**
+     * Releases the resources of the detector.
+     */
+    void close();
+}
@@ -0,0 +1,57 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import android.graphics.Rect;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
+
+/**
+ * {@link Detector} for EAN-8 barcodes that first runs the lightweight {@link Ean8ScanlineDecoder}
+ * on the luma plane and only hands the frame to a fallback detector (usually ML Kit) if that fails.
+ *
+ * <p>The scanline decoder only reads a handful of lines, so it runs inline on the calling thread.
+ * Detection may be called from several threads at once (e.g., by the processing thread and by the
+ * thread delivering results), so each thread uses its own decoder.
+ */
+public class Ean8Detector implements Detector {
+
+    private final ThreadLocal<Ean8ScanlineDecoder> decoders = new ThreadLocal<Ean8ScanlineDecoder>() {
+        @Override
+        protected Ean8ScanlineDecoder initialValue() {
+            return new Ean8ScanlineDecoder();
+        }
+    };
+    private final Detector fallback;
+
+    public Ean8Detector(Detector fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Task<List<DetectedBarcode>> detect(ByteBuffer data, FrameMetadata frameMetadata) {
+        if (data.hasArray()) {
+            Ean8ScanlineDecoder decoder = decoders.get();
+            String value = decoder.decode(
+                    data.array(), frameMetadata.width, frameMetadata.height, frameMetadata.rotation);
+            if (value != null) {
+                int[] bounds = decoder.getBounds();
+                Rect boundingBox = new Rect(bounds[0], bounds[1], bounds[2], bounds[3]);
+                return Tasks.forResult(
+                        Collections.singletonList(new DetectedBarcode(value, Barcode.FORMAT_EAN_8, boundingBox)));
+            }
+        }
+        return fallback.detect(data, frameMetadata);
+    }
+
+    @Override
+    public void close() {
+        fallback.close();
+    }
+}
@@ -0,0 +1,381 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+/**
+ * Lightweight EAN-8 decoder working directly on the luma (Y) plane of NV21 camera frames.
+ *
+ * <p>A few scanlines crossing the center of the upright frame (i.e., the reticle) are binarized and
+ * run-length encoded, and the runs are matched against the EAN-8 guard and digit patterns in both
+ * reading directions. A code is only accepted if its check digit is correct and at least
+ * {@link #MIN_AGREEING_SCANLINES} scanlines decode the same value.
+ *
+ * <p>All scratch buffers are reused between calls, so this class is not thread-safe. It has no
+ * Android dependencies.
+ */
+public class Ean8ScanlineDecoder {
+
+    private static final int NUM_SCANLINES = 7;
+    private static final int MIN_AGREEING_SCANLINES = 2;
+
+    /**
+     * Fraction of the frame, perpendicular to the scanlines, that is covered by the scanlines.
+     */
+    private static final float REL_SCANLINE_SPREAD = 0.12f;
+
+    /**
+     * Fraction of each scanline, centered in the frame, that is searched for a barcode.
+     */
+    private static final float REL_SCAN_LENGTH = 0.9f;
+
+    private static final int MIN_CONTRAST = 32;
+
+    private static final int NUM_DIGITS = 8;
+    // Start guard (3) + 4 digits (4 each) + middle guard (5) + 4 digits (4 each) + end guard (3).
+    private static final int NUM_RUNS = 43;
+    private static final int NUM_MODULES = 67;
+    private static final int MODULES_PER_DIGIT = 7;
+    private static final int QUIET_ZONE_MODULES = 3;
+
+    private static final float MAX_GUARD_DEVIATION = 0.7f;
+    private static final float MAX_DIGIT_VARIANCE = 2.0f;
+    private static final float MAX_DIGIT_ELEMENT_VARIANCE = 0.9f;
+
+    /**
+     * Element widths (in modules) of the L-code digits, starting with a space. R-code digits use the
+     * same widths, starting with a bar.
+     */
+    private static final int[][] DIGIT_PATTERNS = {
+            {3, 2, 1, 1},
+            {2, 2, 2, 1},
+            {2, 1, 2, 2},
+            {1, 4, 1, 1},
+            {1, 1, 3, 2},
+            {1, 2, 3, 1},
+            {1, 1, 1, 4},
+            {1, 3, 1, 2},
+            {1, 2, 1, 3},
+            {3, 1, 1, 2}
+    };
+
+    private int[] luma = new int[0];
+    private int[] runs = new int[0];
+    private int numRuns;
+    private boolean firstRunIsBar;
+
+    private final int[] digits = new int[NUM_DIGITS];
+    private final int[] lineCodes = new int[NUM_SCANLINES];
+    private final int[] linePositions = new int[NUM_SCANLINES];
+    private final int[] lineStarts = new int[NUM_SCANLINES];
+    private final int[] lineEnds = new int[NUM_SCANLINES];
+    private final int[] bounds = new int[4];
+
+    // Pixel offset (along the scanline) of the last successfully decoded barcode.
+    private int decodedStart;
+    private int decodedEnd;
+
+    /**
+     * Decodes an EAN-8 barcode from the luma plane of an NV21 frame.
+     *
+     * @param nv21     the frame data; only the first {@code width * height} bytes (luma) are read
+     * @param width    the frame width in sensor orientation
+     * @param height   the frame height in sensor orientation
+     * @param rotation the clockwise rotation in degrees needed to make the frame upright
+     * @return the 8-digit code, or {@code null} if no barcode could be decoded
+     */
+    public String decode(byte[] nv21, int width, int height, int rotation) {
+        // Scanlines run horizontally in the upright frame, i.e., across the bars of a barcode held
+        // inside the (horizontal) reticle.
+        boolean alongX = rotation % 180 == 0;
+        int lineLength = alongX ? width : height;
+        int perpendicularLength = alongX ? height : width;
+
+        int scanStart = (int) (lineLength * (1 - REL_SCAN_LENGTH) / 2);
+        int scanLength = lineLength - 2 * scanStart;
+        if (luma.length < scanLength) {
+            luma = new int[scanLength];
+            runs = new int[scanLength];
+        }
+
+        int spacing = (int) (perpendicularLength * REL_SCANLINE_SPREAD / (NUM_SCANLINES - 1));
+        int center = perpendicularLength / 2;
+
+        int numDecoded = 0;
+        for (int line = 0; line < NUM_SCANLINES; line++) {
+            // Starts at the center and alternates outwards: 0, +1, -1, +2, -2, ...
+            int step = (line + 1) / 2;
+            int position = center + ((line % 2 == 1) ? step : -step) * spacing;
+            readScanline(nv21, width, alongX, position, scanStart, scanLength);
+            int code = decodeScanline(scanLength);
+            if (code < 0) {
+                continue;
+            }
+
+            lineCodes[numDecoded] = code;
+            linePositions[numDecoded] = position;
+            lineStarts[numDecoded] = scanStart + decodedStart;
+            lineEnds[numDecoded] = scanStart + decodedEnd;
+            numDecoded++;
+
+            if (countAgreeing(code, numDecoded) >= MIN_AGREEING_SCANLINES) {
+                updateBounds(code, numDecoded, center, alongX, width, height, rotation);
+                return toDigitString(code);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bounding box {left, top, right, bottom} of the last decoded barcode in the
+     * coordinate system of the upright frame. The returned array is reused by subsequent calls.
+     */
+    public int[] getBounds() {
+        return bounds;
+    }
+
+    private void readScanline(byte[] nv21, int width, boolean alongX, int position, int start, int length) {
+        if (alongX) {
+            int offset = position * width + start;
+            for (int i = 0; i < length; i++) {
+                luma[i] = nv21[offset + i] & 0xFF;
+            }
+        } else {
+            int offset = start * width + position;
+            for (int i = 0; i < length; i++) {
+                luma[i] = nv21[offset + i * width] & 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Binarizes and run-length encodes the current scanline and tries to decode it in both
+     * directions.
+     *
+     * @return the decoded code as integer, or -1 on failure
+     */
+    private int decodeScanline(int length) {
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < length; i++) {
+            int value = luma[i];
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (max - min < MIN_CONTRAST) {
+            return -1;
+        }
+
+        int threshold = (min + max) / 2;
+        firstRunIsBar = luma[0] < threshold;
+        boolean currentIsBar = firstRunIsBar;
+        numRuns = 0;
+        int runLength = 0;
+        for (int i = 0; i < length; i++) {
+            boolean isBar = luma[i] < threshold;
+            if (isBar != currentIsBar) {
+                runs[numRuns++] = runLength;
+                runLength = 0;
+                currentIsBar = isBar;
+            }
+            runLength++;
+        }
+        runs[numRuns++] = runLength;
+
+        int code = decodeRuns();
+        if (code >= 0) {
+            return code;
+        }
+
+        // Retry with reversed reading direction (barcode upside down).
+        reverseRuns();
+        code = decodeRuns();
+        if (code >= 0) {
+            int start = decodedStart;
+            decodedStart = length - decodedEnd;
+            decodedEnd = length - start;
+        }
+        return code;
+    }
+
+    private void reverseRuns() {
+        for (int i = 0, j = numRuns - 1; i < j; i++, j--) {
+            int tmp = runs[i];
+            runs[i] = runs[j];
+            runs[j] = tmp;
+        }
+        if (numRuns % 2 == 0) {
+            firstRunIsBar = !firstRunIsBar;
+        }
+    }
+
+    private int decodeRuns() {
+        int offset = 0;
+        for (int start = 0; start + NUM_RUNS < numRuns; start++) {
+            if (start > 0 && isBar(start)) {
+                int code = decodeAt(start);
+                if (code >= 0) {
+                    decodedStart = offset;
+                    decodedEnd = offset;
+                    for (int i = start; i < start + NUM_RUNS; i++) {
+                        decodedEnd += runs[i];
+                    }
+                    return code;
+                }
+            }
+            offset += runs[start];
+        }
+        return -1;
+    }
+
+    private boolean isBar(int run) {
+        return (run % 2 == 0) == firstRunIsBar;
+    }
+
+    /**
+     * Tries to decode an EAN-8 barcode whose start guard begins at the given run, which must be a
+     * bar preceded by a space.
+     */
+    private int decodeAt(int start) {
+        int total = 0;
+        for (int i = start; i < start + NUM_RUNS; i++) {
+            total += runs[i];
+        }
+        float moduleWidth = (float) total / NUM_MODULES;
+
+        // Quiet zones before and after the barcode.
+        if (runs[start - 1] < QUIET_ZONE_MODULES * moduleWidth
+                || runs[start + NUM_RUNS] < QUIET_ZONE_MODULES * moduleWidth) {
+            return -1;
+        }
+
+        if (!isGuard(start, 3, moduleWidth)
+                || !isGuard(start + 19, 5, moduleWidth)
+                || !isGuard(start + 40, 3, moduleWidth)) {
+            return -1;
+        }
+
+        for (int d = 0; d < NUM_DIGITS / 2; d++) {
+            digits[d] = decodeDigit(start + 3 + 4 * d, moduleWidth);
+            digits[d + NUM_DIGITS / 2] = decodeDigit(start + 24 + 4 * d, moduleWidth);
+            if (digits[d] < 0 || digits[d + NUM_DIGITS / 2] < 0) {
+                return -1;
+            }
+        }
+
+        // Digits at odd positions (1st, 3rd, 5th, 7th) are weighted with 3, the others (including
+        // the check digit in 8th position) with 1.
+        int checksum = 0;
+        int code = 0;
+        for (int d = 0; d < NUM_DIGITS; d++) {
+            checksum += (d % 2 == 0) ? 3 * digits[d] : digits[d];
+            code = code * 10 + digits[d];
+        }
+        return checksum % 10 == 0 ? code : -1;
+    }
+
+    private boolean isGuard(int start, int length, float moduleWidth) {
+        for (int i = start; i < start + length; i++) {
+            if (Math.abs(runs[i] / moduleWidth - 1) > MAX_GUARD_DEVIATION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int decodeDigit(int start, float moduleWidth) {
+        int digitWidth = runs[start] + runs[start + 1] + runs[start + 2] + runs[start + 3];
+        if (Math.abs(digitWidth / moduleWidth - MODULES_PER_DIGIT) > 2) {
+            return -1;
+        }
+
+        float scale = (float) MODULES_PER_DIGIT / digitWidth;
+        int bestDigit = -1;
+        float bestVariance = MAX_DIGIT_VARIANCE;
+        for (int digit = 0; digit < DIGIT_PATTERNS.length; digit++) {
+            int[] pattern = DIGIT_PATTERNS[digit];
+            float variance = 0;
+            for (int i = 0; i < 4; i++) {
+                float elementVariance = Math.abs(runs[start + i] * scale - pattern[i]);
+                if (elementVariance > MAX_DIGIT_ELEMENT_VARIANCE) {
+                    variance = Float.MAX_VALUE;
+                    break;
+                }
+                variance += elementVariance;
+            }
+            if (variance < bestVariance) {
+                bestVariance = variance;
+                bestDigit = digit;
+            }
+        }
+        return bestDigit;
+    }
+
+    private int countAgreeing(int code, int numDecoded) {
+        int count = 0;
+        for (int i = 0; i < numDecoded; i++) {
+            if (lineCodes[i] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void updateBounds(
+            int code, int numDecoded, int center, boolean alongX, int width, int height, int rotation) {
+        int minAlong = Integer.MAX_VALUE;
+        int maxAlong = Integer.MIN_VALUE;
+        int maxDistance = 0;
+        for (int i = 0; i < numDecoded; i++) {
+            if (lineCodes[i] != code) {
+                continue;
+            }
+            minAlong = Math.min(minAlong, lineStarts[i]);
+            maxAlong = Math.max(maxAlong, lineEnds[i]);
+            maxDistance = Math.max(maxDistance, Math.abs(linePositions[i] - center));
+        }
+        // The bars are assumed to cross the whole band between the agreeing scanlines, which
+        // always includes the center of the frame.
+        int minAcross = center - maxDistance;
+        int maxAcross = center + maxDistance;
+
+        // Corners in sensor coordinates.
+        int x0 = alongX ? minAlong : minAcross;
+        int x1 = alongX ? maxAlong : maxAcross;
+        int y0 = alongX ? minAcross : minAlong;
+        int y1 = alongX ? maxAcross : maxAlong;
+
+        // Rotates the corners clockwise into the upright frame.
+        switch (rotation) {
+            case 90:
+                setBounds(height - y1, x0, height - y0, x1);
+                break;
+            case 180:
+                setBounds(width - x1, height - y1, width - x0, height - y0);
+                break;
+            case 270:
+                setBounds(y0, width - x1, y1, width - x0);
+                break;
+            default:
+                setBounds(x0, y0, x1, y1);
+                break;
+        }
+    }
+
+    private void setBounds(int left, int top, int right, int bottom) {
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    private static String toDigitString(int code) {
+        char[] chars = new char[NUM_DIGITS];
+        for (int i = NUM_DIGITS - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,53 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
+
+/**
+ * {@link Detector} backed by the ML Kit barcode scanning client.
+ */
+public class MlKitDetector implements Detector {
+
+    private final BarcodeScanner scanner;
+
+    public MlKitDetector(int barcodeFormat) {
+        BarcodeScannerOptions options = new BarcodeScannerOptions.Builder()
+                .setBarcodeFormats(barcodeFormat)
+                .build();
+        scanner = BarcodeScanning.getClient(options);
+    }
+
+    @Override
+    public Task<List<DetectedBarcode>> detect(ByteBuffer data, FrameMetadata frameMetadata) {
+        InputImage image = InputImage.fromByteBuffer(
+                data,
+                frameMetadata.width,
+                frameMetadata.height,
+                frameMetadata.rotation,
+                InputImage.IMAGE_FORMAT_NV21
+        );
+        return scanner.process(image).continueWith(task -> {
+            List<Barcode> barcodes = task.getResult();
+            List<DetectedBarcode> results = new ArrayList<>(barcodes.size());
+            for (Barcode barcode : barcodes) {
+                results.add(DetectedBarcode.fromMlKitBarcode(barcode));
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public void close() {
+        scanner.close();
+    }
+}
@@ -27,6 +27,7 @@ public class QrCodeParser {
     private boolean hasEveningSample;
     private String shareEmailAddress;
     private boolean isCheckDuplicatesEnabled;
+    private long alarmEscalationDuration;
 
     public QrCodeParser(String dataString) {
         String versionizedDataString = QrLegacy.adaptToCurrentVersion(dataString);
@@ -87,6 +88,16 @@ public class QrCodeParser {
         return isCheckDuplicatesEnabled;
     }
 
+    /**
+     * Returns the time in milliseconds over which the alarm volume is raised to the maximum, 0 to
+     * ring at full volume right away. Optional, defaults to
+     * {@link Constants#ALARM_ESCALATION_DEFAULT_DURATION}.
+     * @return alarm escalation duration
+     */
+    public long getAlarmEscalationDuration() {
+        return alarmEscalationDuration;
+    }
+
     private void parse(String dataString) {
         String[] properties = dataString.split(Constants.QR_PARSER_SEPARATOR);
 
@@ -120,6 +131,10 @@ public class QrCodeParser {
         shareEmailAddress = getStringProperty(Constants.QR_PARSER_PROPERTY_CONTACT);
         isCheckDuplicatesEnabled = getIntProperty(Constants.QR_PARSER_PROPERTY_DUPLICATES) == 1;
         participantId = getStringProperty(Constants.QR_PARSER_PROPERTY_PARTICIPANT_ID, false);
+        alarmEscalationDuration = Constants.ALARM_ESCALATION_DEFAULT_DURATION;
+        if (propertyMap.containsKey(Constants.QR_PARSER_PROPERTY_ALARM_ESCALATION)) {
+            alarmEscalationDuration = getIntProperty(Constants.QR_PARSER_PROPERTY_ALARM_ESCALATION) * 1000L;
+        }
     }
 
     private void setInvalid(String error) {
@@ -0,0 +1,155 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeChecker.BarcodeCheckResult;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.WorkflowModel.WorkflowState;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
+
+/**
+ * Decides on the detection results of a scan session: picks the barcode in the center of the
+ * frame, waits for the {@link BarcodeConsensus}, validates the barcode and runs the transition
+ * from {@link WorkflowState#DETECTING} to {@link WorkflowState#SEARCHING}.
+ *
+ * <p>The engine runs on a background thread and only produces immutable {@link UiState}s, which
+ * are applied on the main thread by the {@link BarcodeProcessor}. All methods have to be called
+ * from the same thread.
+ */
+@WorkerThread
+class ScanSessionEngine {
+
+    /**
+     * State of a scan session, as displayed by the UI.
+     */
+    static final class UiState {
+
+        final WorkflowState workflowState;
+
+        /**
+         * The accepted barcode if the state is {@link WorkflowState#SEARCHING}, otherwise null.
+         */
+        @Nullable
+        final DetectedBarcode acceptedBarcode;
+
+        /**
+         * The most recent rejection of this session. Kept in every state, so that it is not lost
+         * if several states are coalesced.
+         */
+        @Nullable
+        final BarcodeRejection lastRejection;
+
+        UiState(WorkflowState workflowState, @Nullable DetectedBarcode acceptedBarcode,
+                @Nullable BarcodeRejection lastRejection) {
+            this.workflowState = workflowState;
+            this.acceptedBarcode = acceptedBarcode;
+            this.lastRejection = lastRejection;
+        }
+    }
+
+    private final BarcodeConsensus consensus;
+    private final BarcodeValidator validator;
+
+    private boolean barcodeAccepted = false;
+    private BarcodeRejection lastRejection;
+
+    // Value of the rejected barcode as long as it stays in the center of the frame. It is not voted
+    // on (nor logged and validated) again until another value or no barcode is seen.
+    @Nullable
+    private String rejectedValueInView;
+
+    ScanSessionEngine(BarcodeConsensus consensus, BarcodeValidator validator) {
+        this.consensus = consensus;
+        this.validator = validator;
+    }
+
+    /**
+     * Consumes the detection results of a frame.
+     *
+     * @return the new UI state, or null if a barcode was already accepted and the results are
+     * ignored until {@link #reset()}
+     */
+    @Nullable
+    UiState onResults(FrameMetadata frameMetadata, List<DetectedBarcode> results) {
+        if (barcodeAccepted) {
+            return null;
+        }
+
+        // Picks the barcode, if exists, that covers the center of the frame (and therefore of the
+        // graphic overlay, which shows the frame scaled to its size).
+        DetectedBarcode barcodeInCenter = null;
+        for (DetectedBarcode barcode : results) {
+            if (barcode.getBoundingBox() != null && coversCenter(barcode.getBoundingBox(), frameMetadata)) {
+                barcodeInCenter = barcode;
+                break;
+            }
+        }
+
+        String value = barcodeInCenter != null ? barcodeInCenter.getRawValue() : null;
+        if (rejectedValueInView != null) {
+            if (rejectedValueInView.equals(value)) {
+                return new UiState(WorkflowState.DETECTING, null, lastRejection);
+            }
+            rejectedValueInView = null;
+        }
+
+        // Only accepts the barcode once enough recent frames agree on its value.
+        String confirmedValue = consensus.addVote(value);
+        if (confirmedValue == null) {
+            return new UiState(WorkflowState.DETECTING, null, lastRejection);
+        }
+
+        logConsensus(confirmedValue);
+        consensus.reset();
+
+        BarcodeCheckResult check = validator.validate(barcodeInCenter);
+        if (check != BarcodeCheckResult.VALID) {
+            // Keeps scanning, but lets the UI know why the barcode is not accepted. A value is only
+            // confirmed again after it left the view, so every confirmation is a new rejection the
+            // UI has to handle, even if the value was rejected before.
+            lastRejection = new BarcodeRejection(confirmedValue, check);
+            rejectedValueInView = confirmedValue;
+            return new UiState(WorkflowState.DETECTING, null, lastRejection);
+        }
+
+        barcodeAccepted = true;
+        return new UiState(WorkflowState.SEARCHING, barcodeInCenter, lastRejection);
+    }
+
+    /**
+     * Starts over after an accepted barcode was handled, e.g., to scan again.
+     */
+    void reset() {
+        barcodeAccepted = false;
+        rejectedValueInView = null;
+        consensus.reset();
+    }
+
+    private static boolean coversCenter(Rect box, FrameMetadata frameMetadata) {
+        // Bounding boxes are in upright coordinates.
+        float centerX = frameMetadata.uprightWidth / 2f;
+        float centerY = frameMetadata.uprightHeight / 2f;
+        return box.left <= centerX && centerX < box.right && box.top <= centerY && centerY < box.bottom;
+    }
+
+    private void logConsensus(String barcodeValue) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcodeValue);
+            json.put(Constants.LOGGER_EXTRA_NUM_FRAMES, consensus.getFrameCount());
+            json.put(Constants.LOGGER_EXTRA_VOTE_THRESHOLD, consensus.getVoteThreshold());
+            LoggerUtil.log(Constants.LOGGER_ACTION_BARCODE_CONSENSUS, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+}
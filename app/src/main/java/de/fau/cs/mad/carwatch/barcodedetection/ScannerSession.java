@@ -0,0 +1,128 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+/**
+ * Shares the barcode detectors between all {@link BarcodeProcessor}s, so that switching between
+ * scanners (e.g., from the QR code to the EAN-8 scanner, or when a fragment is resumed) does not
+ * re-create the ML Kit clients.
+ *
+ * <p>The session is reference counted: each processor acquires it when created and releases it
+ * when stopped. The detectors are closed shortly after the last processor has released the
+ * session, so that a scanner which is stopped right before the next one is created (e.g., when
+ * navigating from the QR code to the EAN-8 scanner) does not close and re-create them.
+ */
+public class ScannerSession {
+
+    private static final String TAG = ScannerSession.class.getSimpleName();
+
+    /**
+     * Time the detectors are kept after the last processor released the session.
+     */
+    private static final long CLOSE_DELAY_MS = 5000;
+
+    private static ScannerSession instance;
+
+    private final SparseArray<Detector> detectors = new SparseArray<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable closeIfUnused = this::closeIfUnused;
+    private int refCount = 0;
+
+    private ScannerSession() {
+    }
+
+    /**
+     * Returns the current session, creating a new one if none is active. Every call has to be
+     * matched by a call to {@link #release()}.
+     */
+    public static ScannerSession acquire() {
+        synchronized (ScannerSession.class) {
+            if (instance == null) {
+                instance = new ScannerSession();
+            }
+            instance.refCount++;
+            instance.handler.removeCallbacks(instance.closeIfUnused);
+            return instance;
+        }
+    }
+
+    /**
+     * Releases the session. If it is no longer used, all detectors are closed after
+     * {@link #CLOSE_DELAY_MS}, unless the session is acquired again in the meantime.
+     */
+    public void release() {
+        synchronized (ScannerSession.class) {
+            if (refCount == 0) {
+                return;
+            }
+            refCount--;
+            if (refCount > 0) {
+                return;
+            }
+            handler.postDelayed(closeIfUnused, CLOSE_DELAY_MS);
+        }
+    }
+
+    private void closeIfUnused() {
+        synchronized (ScannerSession.class) {
+            if (refCount > 0) {
+                return;
+            }
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        Log.d(TAG, "Closing unused detectors");
+        close();
+    }
+
+    /**
+     * Returns whether the detector for the given format is already initialized, either in this
+     * session or by {@link ScannerWarmup}.
+     */
+    public synchronized boolean isInitialized(int barcodeFormat) {
+        return detectors.get(barcodeFormat) != null || ScannerWarmup.hasWarmDetector(barcodeFormat);
+    }
+
+    /**
+     * Returns the detector for the given format.
+     *
+     * <p>The returned detector is owned by the session and must not be closed by the caller.
+     */
+    public synchronized Detector getDetector(int barcodeFormat) {
+        Detector detector = detectors.get(barcodeFormat);
+        if (detector == null) {
+            detector = createDetector(barcodeFormat);
+            detectors.put(barcodeFormat, detector);
+        }
+        return detector;
+    }
+
+    /**
+     * Creates the detector for the given format. EAN-8 codes are decoded with the lightweight
+     * scanline decoder first, all other formats directly with ML Kit.
+     */
+    private static Detector createDetector(int barcodeFormat) {
+        Detector mlKitDetector = ScannerWarmup.takeWarmDetector(barcodeFormat);
+        if (mlKitDetector == null) {
+            Log.d(TAG, "Creating detector for format " + barcodeFormat);
+            mlKitDetector = new MlKitDetector(barcodeFormat);
+        }
+        if (barcodeFormat == Barcode.FORMAT_EAN_8) {
+            return new Ean8Detector(mlKitDetector);
+        }
+        return mlKitDetector;
+    }
+
+    private synchronized void close() {
+        for (int i = 0; i < detectors.size(); i++) {
+            detectors.valueAt(i).close();
+        }
+        detectors.clear();
+    }
+}
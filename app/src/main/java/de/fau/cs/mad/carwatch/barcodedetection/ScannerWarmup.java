@@ -0,0 +1,93 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.fau.cs.mad.carwatch.barcodedetection.camera.CameraConfigCache;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameMetadata;
+
+/**
+ * Initializes the ML Kit barcode scanner ahead of time, e.g., while an alarm is ringing, so that
+ * the scanner opened afterwards does not have to wait for the model or the cached camera
+ * configuration to be loaded.
+ *
+ * <p>The warmed-up detector is handed over to the {@link ScannerSession} once a scanner for the
+ * same format is opened, see {@link #takeWarmDetector(int)}.
+ */
+public class ScannerWarmup {
+
+    private static final String TAG = ScannerWarmup.class.getSimpleName();
+
+    /**
+     * Size of the blank frame that is run through the detector to load the model.
+     */
+    private static final int WARMUP_FRAME_SIZE = 64;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final SparseArray<Detector> warmDetectors = new SparseArray<>();
+
+    private ScannerWarmup() {
+    }
+
+    /**
+     * Loads the cached camera configuration and creates a detector for the given format in the
+     * background and runs a blank frame through it. Does nothing if a warm detector for this format
+     * is already available.
+     */
+    public static void warmUp(Context context, int barcodeFormat) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            CameraConfigCache.preload(appContext);
+
+            synchronized (warmDetectors) {
+                if (warmDetectors.get(barcodeFormat) != null) {
+                    return;
+                }
+            }
+
+            long startTime = SystemClock.elapsedRealtime();
+            Detector detector = new MlKitDetector(barcodeFormat);
+            // NV21 frame, the luma plane is followed by the interleaved chroma plane at half size.
+            ByteBuffer blankFrame = ByteBuffer.allocate(WARMUP_FRAME_SIZE * WARMUP_FRAME_SIZE * 3 / 2);
+            FrameMetadata frameMetadata = new FrameMetadata(WARMUP_FRAME_SIZE, WARMUP_FRAME_SIZE, 0);
+            detector.detect(blankFrame, frameMetadata).addOnCompleteListener(executor, task -> {
+                Log.d(TAG, "Warmed up detector for format " + barcodeFormat + " in "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                synchronized (warmDetectors) {
+                    if (warmDetectors.get(barcodeFormat) == null) {
+                        warmDetectors.put(barcodeFormat, detector);
+                        return;
+                    }
+                }
+                detector.close();
+            });
+        });
+    }
+
+    static boolean hasWarmDetector(int barcodeFormat) {
+        synchronized (warmDetectors) {
+            return warmDetectors.get(barcodeFormat) != null;
+        }
+    }
+
+    /**
+     * Returns the warmed-up detector for the given format and removes it from the cache, or null if
+     * no warm-up has completed. The caller takes over the ownership and has to close the detector.
+     */
+    @Nullable
+    static Detector takeWarmDetector(int barcodeFormat) {
+        synchronized (warmDetectors) {
+            Detector detector = warmDetectors.get(barcodeFormat);
+            warmDetectors.remove(barcodeFormat);
+            return detector;
+        }
+    }
+}
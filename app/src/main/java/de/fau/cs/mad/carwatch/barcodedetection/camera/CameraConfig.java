@@ -0,0 +1,40 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.common.images.Size;
+
+/**
+ * Camera configuration negotiated for a camera and display aspect ratio, i.e., the result of
+ * selecting preview/picture size, preview fps range and focus mode, together with the orientation
+ * of the camera sensor. Cached in {@link CameraConfigCache} so that subsequent scans can skip the
+ * negotiation.
+ */
+public class CameraConfig {
+
+    public final Size previewSize;
+    @Nullable
+    public final Size pictureSize;
+    public final int minFps;
+    public final int maxFps;
+    @Nullable
+    public final String focusMode;
+    public final int sensorOrientation;
+
+    CameraConfig(Size previewSize, @Nullable Size pictureSize, int minFps, int maxFps,
+                 @Nullable String focusMode, int sensorOrientation) {
+        this.previewSize = previewSize;
+        this.pictureSize = pictureSize;
+        this.minFps = minFps;
+        this.maxFps = maxFps;
+        this.focusMode = focusMode;
+        this.sensorOrientation = sensorOrientation;
+    }
+
+    @Override
+    public String toString() {
+        return "CameraConfig{preview=" + previewSize + ", picture=" + pictureSize
+                + ", fps=[" + minFps + ", " + maxFps + "], focusMode=" + focusMode
+                + ", sensorOrientation=" + sensorOrientation + "}";
+    }
+}
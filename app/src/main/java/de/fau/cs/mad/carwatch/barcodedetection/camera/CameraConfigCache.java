@@ -0,0 +1,155 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.common.images.Size;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fau.cs.mad.carwatch.BuildConfig;
+
+/**
+ * Keeps the camera configurations negotiated by {@link CameraSource}, keyed by camera id and
+ * display aspect ratio. Configurations are persisted, so that the negotiation only happens once
+ * per device instead of once per scan session.
+ *
+ * <p>The persisted configurations are dropped whenever the OS build or the app version changes,
+ * as both may change the capabilities reported by the camera.
+ */
+public class CameraConfigCache {
+
+    private static final String TAG = CameraConfigCache.class.getSimpleName();
+
+    private static final String PREFS_NAME = "camera_config_cache";
+    private static final String KEY_BUILD = "build";
+
+    private static final String JSON_PREVIEW_WIDTH = "preview_width";
+    private static final String JSON_PREVIEW_HEIGHT = "preview_height";
+    private static final String JSON_PICTURE_WIDTH = "picture_width";
+    private static final String JSON_PICTURE_HEIGHT = "picture_height";
+    private static final String JSON_MIN_FPS = "min_fps";
+    private static final String JSON_MAX_FPS = "max_fps";
+    private static final String JSON_FOCUS_MODE = "focus_mode";
+    private static final String JSON_SENSOR_ORIENTATION = "sensor_orientation";
+
+    private static final Map<String, CameraConfig> configs = new HashMap<>();
+    private static SharedPreferences preferences;
+
+    private CameraConfigCache() {
+    }
+
+    /**
+     * Loads the persisted configurations, so that the disk read does not happen when the camera is
+     * opened.
+     */
+    public static synchronized void preload(Context context) {
+        getPreferences(context);
+    }
+
+    /**
+     * Drops all cached configurations, e.g., after the app was updated.
+     */
+    public static synchronized void invalidate(Context context) {
+        configs.clear();
+        getPreferences(context).edit().clear().putString(KEY_BUILD, getBuildId()).apply();
+    }
+
+    @Nullable
+    static synchronized CameraConfig get(Context context, int cameraId, float displayAspectRatio) {
+        String key = key(cameraId, displayAspectRatio);
+        CameraConfig config = configs.get(key);
+        if (config == null) {
+            config = fromJson(getPreferences(context).getString(key, null));
+            if (config != null) {
+                configs.put(key, config);
+            }
+        }
+        return config;
+    }
+
+    static synchronized void put(Context context, int cameraId, float displayAspectRatio, CameraConfig config) {
+        String key = key(cameraId, displayAspectRatio);
+        configs.put(key, config);
+        String json = toJson(config);
+        if (json != null) {
+            getPreferences(context).edit().putString(key, json).apply();
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        if (preferences == null) {
+            preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String buildId = getBuildId();
+            if (!buildId.equals(preferences.getString(KEY_BUILD, null))) {
+                Log.d(TAG, "OS or app version changed, dropping cached camera configurations.");
+                configs.clear();
+                preferences.edit().clear().putString(KEY_BUILD, buildId).apply();
+            }
+        }
+        return preferences;
+    }
+
+    private static String getBuildId() {
+        return Build.FINGERPRINT + "/" + BuildConfig.VERSION_CODE;
+    }
+
+    private static String key(int cameraId, float displayAspectRatio) {
+        // The aspect ratio is rounded, as the overlay size may differ by a few pixels between
+        // sessions (e.g., depending on whether the status bar is shown).
+        return cameraId + ":" + Math.round(displayAspectRatio * 100);
+    }
+
+    @Nullable
+    private static String toJson(CameraConfig config) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(JSON_PREVIEW_WIDTH, config.previewSize.getWidth());
+            json.put(JSON_PREVIEW_HEIGHT, config.previewSize.getHeight());
+            if (config.pictureSize != null) {
+                json.put(JSON_PICTURE_WIDTH, config.pictureSize.getWidth());
+                json.put(JSON_PICTURE_HEIGHT, config.pictureSize.getHeight());
+            }
+            json.put(JSON_MIN_FPS, config.minFps);
+            json.put(JSON_MAX_FPS, config.maxFps);
+            json.put(JSON_FOCUS_MODE, config.focusMode);
+            json.put(JSON_SENSOR_ORIENTATION, config.sensorOrientation);
+            return json.toString();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Nullable
+    private static CameraConfig fromJson(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(value);
+            Size pictureSize = null;
+            if (json.has(JSON_PICTURE_WIDTH)) {
+                pictureSize = new Size(json.getInt(JSON_PICTURE_WIDTH), json.getInt(JSON_PICTURE_HEIGHT));
+            }
+            return new CameraConfig(
+                    new Size(json.getInt(JSON_PREVIEW_WIDTH), json.getInt(JSON_PREVIEW_HEIGHT)),
+                    pictureSize,
+                    json.getInt(JSON_MIN_FPS),
+                    json.getInt(JSON_MAX_FPS),
+                    json.has(JSON_FOCUS_MODE) ? json.getString(JSON_FOCUS_MODE) : null,
+                    json.getInt(JSON_SENSOR_ORIENTATION));
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping invalid cached camera configuration: " + value);
+            return null;
+        }
+    }
+}
@@ -16,13 +16,17 @@
 
 package de.fau.cs.mad.carwatch.barcodedetection.camera;
 
-import android.animation.AnimatorSet;
 import android.animation.ValueAnimator;
+import android.view.animation.Interpolator;
+import android.view.animation.LinearInterpolator;
 
 import androidx.interpolator.view.animation.FastOutSlowInInterpolator;
 
 /**
  * Custom animator for the object or barcode reticle in live camera.
+ *
+ * <p>All ripple properties are derived from a single {@link ValueAnimator} tick, so the overlay is
+ * invalidated at most once per frame.
  */
 public class CameraReticleAnimator {
 
@@ -35,62 +39,60 @@ public class CameraReticleAnimator {
     private static final long START_DELAY_RIPPLE_EXPAND_MS = 333;
     private static final long START_DELAY_RIPPLE_STROKE_WIDTH_SHRINK_MS = 333;
     private static final long START_DELAY_RESTART_DORMANCY_MS = 1167;
+    private static final long DURATION_CYCLE_MS = START_DELAY_RESTART_DORMANCY_MS + DURATION_RESTART_DORMANCY_MS;
+
+    private final Interpolator interpolator = new FastOutSlowInInterpolator();
 
     private float rippleAlphaScale = 0f;
     private float rippleSizeScale = 0f;
     private float rippleStrokeWidthScale = 1f;
 
-    private final AnimatorSet animatorSet;
+    private final ValueAnimator animator;
 
     public CameraReticleAnimator(GraphicOverlay graphicOverlay) {
-        ValueAnimator rippleFadeInAnimator =
-                ValueAnimator.ofFloat(0f, 1f).setDuration(DURATION_RIPPLE_FADE_IN_MS);
-        rippleFadeInAnimator.addUpdateListener(
-                animation -> {
-                    rippleAlphaScale = (float) animation.getAnimatedValue();
-                    graphicOverlay.postInvalidate();
-                });
-
-        ValueAnimator rippleFadeOutAnimator =
-                ValueAnimator.ofFloat(1f, 0f).setDuration(DURATION_RIPPLE_FADE_OUT_MS);
-        rippleFadeOutAnimator.setStartDelay(START_DELAY_RIPPLE_FADE_OUT_MS);
-        rippleFadeOutAnimator.addUpdateListener(
+        animator = ValueAnimator.ofFloat(0f, DURATION_CYCLE_MS).setDuration(DURATION_CYCLE_MS);
+        animator.setInterpolator(new LinearInterpolator());
+        animator.addUpdateListener(
                 animation -> {
-                    rippleAlphaScale = (float) animation.getAnimatedValue();
-                    graphicOverlay.postInvalidate();
-                });
-
-        ValueAnimator rippleExpandAnimator =
-                ValueAnimator.ofFloat(0f, 1f).setDuration(DURATION_RIPPLE_EXPAND_MS);
-        rippleExpandAnimator.setStartDelay(START_DELAY_RIPPLE_EXPAND_MS);
-        rippleExpandAnimator.setInterpolator(new FastOutSlowInInterpolator());
-        rippleExpandAnimator.addUpdateListener(
-                animation -> {
-                    rippleSizeScale = (float) animation.getAnimatedValue();
-                    graphicOverlay.postInvalidate();
+                    // Nothing changes during the dormancy phase, so no redraw is needed.
+                    if (update((float) animation.getAnimatedValue())) {
+                        graphicOverlay.invalidate();
+                    }
                 });
+    }
 
-        ValueAnimator rippleStrokeWidthShrinkAnimator =
-                ValueAnimator.ofFloat(1f, 0.5f).setDuration(DURATION_RIPPLE_STROKE_WIDTH_SHRINK_MS);
-        rippleStrokeWidthShrinkAnimator.setStartDelay(START_DELAY_RIPPLE_STROKE_WIDTH_SHRINK_MS);
-        rippleStrokeWidthShrinkAnimator.setInterpolator(new FastOutSlowInInterpolator());
-        rippleStrokeWidthShrinkAnimator.addUpdateListener(
-                animation -> {
-                    rippleStrokeWidthScale = (float) animation.getAnimatedValue();
-                    graphicOverlay.postInvalidate();
-                });
+    /**
+     * Computes all ripple properties for the given time (in ms) since the start of the cycle.
+     *
+     * @return whether any of the properties changed
+     */
+    private boolean update(float timeMs) {
+        float alphaScale;
+        if (timeMs < START_DELAY_RIPPLE_FADE_OUT_MS) {
+            alphaScale = progress(timeMs, 0, DURATION_RIPPLE_FADE_IN_MS);
+        } else {
+            alphaScale = 1f - progress(timeMs, START_DELAY_RIPPLE_FADE_OUT_MS, DURATION_RIPPLE_FADE_OUT_MS);
+        }
+        float sizeScale = interpolator.getInterpolation(
+                progress(timeMs, START_DELAY_RIPPLE_EXPAND_MS, DURATION_RIPPLE_EXPAND_MS));
+        float strokeWidthScale = 1f - 0.5f * interpolator.getInterpolation(
+                progress(timeMs, START_DELAY_RIPPLE_STROKE_WIDTH_SHRINK_MS, DURATION_RIPPLE_STROKE_WIDTH_SHRINK_MS));
+
+        boolean changed = alphaScale != rippleAlphaScale
+                || sizeScale != rippleSizeScale
+                || strokeWidthScale != rippleStrokeWidthScale;
+        rippleAlphaScale = alphaScale;
+        rippleSizeScale = sizeScale;
+        rippleStrokeWidthScale = strokeWidthScale;
+        return changed;
+    }
 
-        ValueAnimator fakeAnimatorForRestartDelay =
-                ValueAnimator.ofInt(0, 0).setDuration(DURATION_RESTART_DORMANCY_MS);
-        fakeAnimatorForRestartDelay.setStartDelay(START_DELAY_RESTART_DORMANCY_MS);
-
-        animatorSet = new AnimatorSet();
-        animatorSet.playTogether(
-                rippleFadeInAnimator,
-                rippleFadeOutAnimator,
-                rippleExpandAnimator,
-                rippleStrokeWidthShrinkAnimator,
-                fakeAnimatorForRestartDelay);
+    /**
+     * Returns the linear progress in [0, 1] of a sub-animation with the given start delay and
+     * duration.
+     */
+    private static float progress(float timeMs, long startDelayMs, long durationMs) {
+        return Math.max(0f, Math.min(1f, (timeMs - startDelayMs) / durationMs));
     }
 
     /**
@@ -115,13 +117,13 @@ public class CameraReticleAnimator {
     }
 
     public void start() {
-        if (!animatorSet.isRunning()) {
-            animatorSet.start();
+        if (!animator.isRunning()) {
+            animator.start();
         }
     }
 
     public void cancel() {
-        animatorSet.cancel();
+        animator.cancel();
         rippleAlphaScale = 0f;
         rippleSizeScale = 0f;
         rippleStrokeWidthScale = 1f;
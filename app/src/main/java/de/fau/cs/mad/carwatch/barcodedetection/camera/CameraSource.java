@@ -28,12 +28,19 @@ import android.view.WindowManager;
 
 import com.google.android.gms.common.images.Size;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.util.Utils;
 
 /**
@@ -58,12 +65,17 @@ public class CameraSource {
     private static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH = 640;
     private static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT = 360;
     private static final float REQUESTED_CAMERA_FPS = 30.0f;
+    private static final int NUM_PREVIEW_BUFFERS = 6;
 
-    private Camera camera;
+    // Volatile, as frame buffers are handed back to the camera from the detectors' threads.
+    private volatile Camera camera;
     private int rotation;
 
     private Size previewSize;
 
+    // Geometry shared by all frames of the current camera session.
+    private FrameMetadata frameMetadata;
+
     /**
      * Dedicated thread and associated runnable for calling into the detector with frames, as the
      * frames become available from the camera.
@@ -71,8 +83,22 @@ public class CameraSource {
     private Thread processingThread;
     private final FrameProcessingRunnable processingRunnable = new FrameProcessingRunnable();
 
-    private final Object processorLock = new Object();
-    private FrameProcessor frameProcessor;
+    private final AtomicReference<FrameProcessor> frameProcessor = new AtomicReference<>();
+
+    // Optional recorder for dumping the processed frames, see FrameRecorder.
+    private volatile FrameRecorder frameRecorder;
+
+    // Optional detector that is informed about changes of the scene brightness.
+    private volatile InactivityDetector inactivityDetector;
+
+    /**
+     * Raises exposure compensation and turns on the torch in dark scenes. Only accessed from the
+     * processing thread while the camera is running.
+     */
+    private LuminanceMonitor luminanceMonitor;
+    private int appliedLuminanceLevel;
+    private int maxExposureCompensation;
+    private boolean torchSupported;
 
     /**
      * Map to convert between a byte array, received from the camera, and its associated byte buffer.
@@ -81,9 +107,11 @@ public class CameraSource {
      *
      * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
      * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-     * identity ('==') check on the keys.
+     * identity ('==') check on the keys. Synchronized, as buffers are released by the detectors'
+     * threads.
      */
-    private final Map<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+    private final Map<byte[], ByteBuffer> bytesToByteBuffer =
+            Collections.synchronizedMap(new IdentityHashMap<>());
 
     private final Context context;
     private final GraphicOverlay graphicOverlay;
@@ -135,6 +163,11 @@ public class CameraSource {
             processingThread = null;
         }
 
+        if (luminanceMonitor != null) {
+            logLuminanceSummary(luminanceMonitor);
+            luminanceMonitor = null;
+        }
+
         if (camera != null) {
             camera.stopPreview();
             camera.setPreviewCallbackWithBuffer(null);
@@ -147,6 +180,9 @@ public class CameraSource {
             camera = null;
         }
 
+        // Drop a frame that may have arrived after the processing thread terminated.
+        processingRunnable.clearPendingFrame();
+
         // Release the reference to any image buffers, since these will no longer be in use.
         bytesToByteBuffer.clear();
     }
@@ -156,24 +192,37 @@ public class CameraSource {
      */
     public void release() {
         graphicOverlay.clear();
-        synchronized (processorLock) {
-            stop();
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
+        stop();
+        FrameProcessor processor = frameProcessor.getAndSet(null);
+        if (processor != null) {
+            processor.stop();
         }
     }
 
     public void setFrameProcessor(FrameProcessor processor) {
         graphicOverlay.clear();
-        synchronized (processorLock) {
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
-            frameProcessor = processor;
+        // Swap first, so the processing thread picks up the new processor with its next frame
+        // without having to wait for the old one to shut down.
+        FrameProcessor previous = frameProcessor.getAndSet(processor);
+        if (previous != null && previous != processor) {
+            previous.stop();
         }
     }
 
+    /**
+     * Sets a recorder that receives every frame before it is processed, or null to stop recording.
+     */
+    public void setFrameRecorder(FrameRecorder recorder) {
+        frameRecorder = recorder;
+    }
+
+    /**
+     * Sets a detector that receives the brightness of every frame, or null.
+     */
+    public void setInactivityDetector(InactivityDetector detector) {
+        inactivityDetector = detector;
+    }
+
     /**
      * Returns the preview size that is currently in use by the underlying camera.
      */
@@ -181,6 +230,14 @@ public class CameraSource {
         return previewSize;
     }
 
+    /**
+     * Returns the geometry of the frames of the current camera session, or null if the camera has
+     * not been started.
+     */
+    FrameMetadata getFrameMetadata() {
+        return frameMetadata;
+    }
+
     /**
      * Opens the camera and applies the user settings.
      *
@@ -193,52 +250,70 @@ public class CameraSource {
         }
 
         Camera.Parameters parameters = camera.getParameters();
-        setPreviewAndPictureSize(camera, parameters);
-        setRotation(camera, parameters);
+        CameraConfig config = getCameraConfig(camera, parameters);
 
-        int[] previewFpsRange = selectPreviewFpsRange(camera);
-        if (previewFpsRange == null) {
-            throw new IOException("Could not find suitable preview frames per second range.");
+        previewSize = config.previewSize;
+        parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+        if (config.pictureSize != null) {
+            parameters.setPictureSize(config.pictureSize.getWidth(), config.pictureSize.getHeight());
         }
-        parameters.setPreviewFpsRange(
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
 
+        setRotation(camera, parameters, config.sensorOrientation);
+        frameMetadata = new FrameMetadata(previewSize.getWidth(), previewSize.getHeight(), rotation);
+
+        parameters.setPreviewFpsRange(config.minFps, config.maxFps);
         parameters.setPreviewFormat(IMAGE_FORMAT);
 
-        if (parameters
-                .getSupportedFocusModes()
-                .contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+        if (config.focusMode != null) {
+            parameters.setFocusMode(config.focusMode);
         } else {
             Log.i(TAG, "Camera auto focus is not supported on this device.");
         }
 
+        maxExposureCompensation = parameters.getMaxExposureCompensation();
+        List<String> flashModes = parameters.getSupportedFlashModes();
+        torchSupported = flashModes != null && flashModes.contains(Camera.Parameters.FLASH_MODE_TORCH);
+        int maxLuminanceLevel = LuminanceMonitor.LEVEL_NONE;
+        if (torchSupported) {
+            maxLuminanceLevel = LuminanceMonitor.LEVEL_TORCH;
+        } else if (maxExposureCompensation > 0) {
+            maxLuminanceLevel = LuminanceMonitor.LEVEL_EXPOSURE;
+        }
+        luminanceMonitor = new LuminanceMonitor(maxLuminanceLevel);
+        appliedLuminanceLevel = LuminanceMonitor.LEVEL_NONE;
+
         camera.setParameters(parameters);
 
         camera.setPreviewCallbackWithBuffer(processingRunnable::setNextFrame);
 
-        // Four frame buffers are needed for working with the camera:
+        // Six frame buffers are needed for working with the camera:
         //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
+        //   two for the frames that are currently being executed upon in doing detection (see
+        //       FrameProcessorBase#MAX_FRAMES_IN_FLIGHT)
+        //   one for the next pending frame of the processor, started as soon as a detection completes
+        //   one for the frame pending in the mailbox, handed to the processor next
         //   two for the frames that the camera uses to populate future preview images
         //
-        // Through trial and error it appears that two free buffers, in addition to the two buffers
-        // used in this code, are needed for the camera to work properly. Perhaps the camera has one
-        // thread for acquiring images, and another thread for calling into user code. If only three
-        // buffers are used, then the camera will spew thousands of warning messages when detection
-        // takes a non-trivial amount of time.
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+        // Through trial and error it appears that two free buffers, in addition to the buffers used
+        // in this code, are needed for the camera to work properly. Perhaps the camera has one
+        // thread for acquiring images, and another thread for calling into user code. If only one
+        // free buffer is left, then the camera will spew thousands of warning messages when
+        // detection takes a non-trivial amount of time.
+        for (int i = 0; i < NUM_PREVIEW_BUFFERS; i++) {
+            camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+        }
 
         return camera;
     }
 
-    private void setPreviewAndPictureSize(Camera camera, Parameters parameters) {
-
+    /**
+     * Returns the camera configuration for the current display aspect ratio. The configuration is
+     * negotiated with the camera only once per device and aspect ratio, later sessions reuse the
+     * cached result (see {@link CameraConfigCache}).
+     *
+     * @throws IOException if no suitable preview frames per second range is supported.
+     */
+    private CameraConfig getCameraConfig(Camera camera, Parameters parameters) throws IOException {
         // Camera preview size is based on the landscape mode, so we need to also use the aspect
         // ration of display in the same mode for comparison.
         float displayAspectRatioInLandscape;
@@ -250,26 +325,48 @@ public class CameraSource {
                     (float) graphicOverlay.getWidth() / graphicOverlay.getHeight();
         }
 
+        CameraConfig config = CameraConfigCache.get(context, CAMERA_FACING_BACK, displayAspectRatioInLandscape);
+        if (config != null) {
+            Log.d(TAG, "Using cached camera configuration: " + config);
+            return config;
+        }
+
         CameraSizePair sizePair = selectSizePair(camera, displayAspectRatioInLandscape);
 
-        previewSize = sizePair.preview;
-        //Log.v(TAG, "Camera preview size: " + previewSize);
-        parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+        int[] previewFpsRange = selectPreviewFpsRange(parameters);
+        if (previewFpsRange == null) {
+            throw new IOException("Could not find suitable preview frames per second range.");
+        }
 
-        Size pictureSize = sizePair.picture;
-        if (pictureSize != null) {
-            //Log.v(TAG, "Camera picture size: " + pictureSize);
-            parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
+        String focusMode = null;
+        if (parameters
+                .getSupportedFocusModes()
+                .contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+            focusMode = Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO;
         }
+
+        CameraInfo cameraInfo = new CameraInfo();
+        Camera.getCameraInfo(CAMERA_FACING_BACK, cameraInfo);
+
+        config = new CameraConfig(
+                sizePair.preview,
+                sizePair.picture,
+                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX],
+                focusMode,
+                cameraInfo.orientation);
+        CameraConfigCache.put(context, CAMERA_FACING_BACK, displayAspectRatioInLandscape, config);
+        return config;
     }
 
     /**
      * Calculates the correct rotation for the given camera id and sets the rotation in the
      * parameters. It also sets the camera's display orientation and rotation.
      *
-     * @param parameters the camera parameters for which to set the rotation.
+     * @param parameters        the camera parameters for which to set the rotation.
+     * @param sensorOrientation the orientation of the camera sensor, see {@link CameraInfo#orientation}.
      */
-    private void setRotation(Camera camera, Camera.Parameters parameters) {
+    private void setRotation(Camera camera, Camera.Parameters parameters, int sensorOrientation) {
         WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         if (windowManager != null) {
             int deviceRotation = windowManager.getDefaultDisplay().getRotation();
@@ -291,9 +388,7 @@ public class CameraSource {
                     Log.e(TAG, "Bad device rotation value: " + deviceRotation);
             }
 
-            CameraInfo cameraInfo = new CameraInfo();
-            Camera.getCameraInfo(CAMERA_FACING_BACK, cameraInfo);
-            int angle = (cameraInfo.orientation - degrees + 360) % 360;
+            int angle = (sensorOrientation - degrees + 360) % 360;
             camera.setDisplayOrientation(angle);
             parameters.setRotation(angle);
 
@@ -302,6 +397,48 @@ public class CameraSource {
         }
     }
 
+    /**
+     * Applies the compensation level requested by the {@link LuminanceMonitor}: the exposure
+     * compensation is raised for dark scenes, and reset once the torch is turned on, as the torch
+     * would otherwise overexpose a barcode close to the camera.
+     */
+    private void applyLuminanceLevel(int level) {
+        appliedLuminanceLevel = level;
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            if (maxExposureCompensation > 0) {
+                parameters.setExposureCompensation(
+                        level == LuminanceMonitor.LEVEL_EXPOSURE ? maxExposureCompensation : 0);
+            }
+            if (torchSupported) {
+                parameters.setFlashMode(level == LuminanceMonitor.LEVEL_TORCH
+                        ? Camera.Parameters.FLASH_MODE_TORCH
+                        : Camera.Parameters.FLASH_MODE_OFF);
+            }
+            camera.setParameters(parameters);
+            Log.d(TAG, "Luminance compensation level set to " + level);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to apply luminance compensation level " + level, e);
+        }
+    }
+
+    private void logLuminanceSummary(LuminanceMonitor monitor) {
+        if (monitor.getNumFrames() == 0) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_NUM_FRAMES, monitor.getNumFrames());
+            json.put(Constants.LOGGER_EXTRA_MEAN_LUMINANCE, monitor.getMeanLuminance());
+            json.put(Constants.LOGGER_EXTRA_MIN_LUMINANCE, monitor.getMinLuminance());
+            json.put(Constants.LOGGER_EXTRA_EXPOSURE_FRAME, monitor.getExposureFrame());
+            json.put(Constants.LOGGER_EXTRA_TORCH_FRAME, monitor.getTorchFrame());
+            LoggerUtil.log(Constants.LOGGER_ACTION_SCANNER_LIGHTING, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
      * camera preview size and the format of the camera image.
@@ -394,10 +531,10 @@ public class CameraSource {
     /**
      * Selects the most suitable preview frames per second range.
      *
-     * @param camera the camera to select a frames per second range from
+     * @param parameters the parameters of the camera to select a frames per second range from
      * @return the selected preview frames per second range
      */
-    private static int[] selectPreviewFpsRange(Camera camera) {
+    private static int[] selectPreviewFpsRange(Camera.Parameters parameters) {
         // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
         // rates.
         int desiredPreviewFpsScaled = (int) (REQUESTED_CAMERA_FPS * 1000f);
@@ -409,7 +546,7 @@ public class CameraSource {
         // range (15, 30).
         int[] selectedFpsRange = null;
         int minDiff = Integer.MAX_VALUE;
-        for (int[] range : camera.getParameters().getSupportedPreviewFpsRange()) {
+        for (int[] range : parameters.getSupportedPreviewFpsRange()) {
             int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
             int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
             int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
@@ -427,64 +564,74 @@ public class CameraSource {
      * (i.e., without unnecessary context switching or waiting on the next frame).
      *
      * <p>While detection is running on a frame, new frames may be received from the camera. As these
-     * frames come in, the most recent frame is held onto as pending. As soon as detection and its
-     * associated processing is done for the previous frame, detection on the mostly recently received
-     * frame will immediately start on the same thread.
+     * frames come in, the most recent frame is held onto as pending in a {@link FrameMailbox}, and
+     * older pending frames are returned to the camera. As soon as detection and its associated
+     * processing is done for the previous frame, detection on the mostly recently received frame
+     * will immediately start on the same thread.
      */
     private class FrameProcessingRunnable implements Runnable {
 
-        // This lock guards all of the member variables below.
-        private final Object lock = new Object();
-        private boolean active = true;
-
-        // These pending variables hold the state associated with the new frame awaiting processing.
-        private ByteBuffer pendingFrameData;
+        private final FrameMailbox<ByteBuffer> mailbox = new FrameMailbox<>(this::recycle);
 
         FrameProcessingRunnable() {
         }
 
         /**
-         * Marks the runnable as active/not active. Signals any blocked threads to continue.
+         * Marks the runnable as active/not active. Signals a parked processing thread to continue.
          */
         void setActive(boolean active) {
-            synchronized (lock) {
-                this.active = active;
-                lock.notifyAll();
+            mailbox.setActive(active);
+        }
+
+        /**
+         * Drops the pending frame, if any. Only to be called while the processing thread is not
+         * running.
+         */
+        void clearPendingFrame() {
+            mailbox.clear();
+        }
+
+        /**
+         * Adds a frame buffer back to the camera. Buffers of a camera that was stopped in the
+         * meantime are dropped.
+         */
+        @SuppressWarnings("ByteBufferBackingArray")
+        private void recycle(ByteBuffer frame) {
+            Camera camera = CameraSource.this.camera;
+            if (camera == null || bytesToByteBuffer.get(frame.array()) != frame) {
+                return;
+            }
+            try {
+                camera.addCallbackBuffer(frame.array());
+            } catch (RuntimeException e) {
+                // The camera was released concurrently.
+                Log.d(TAG, "Dropping frame buffer of released camera.");
             }
         }
 
         /**
-         * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-         * present) back to the camera, and keeps a pending reference to the frame data for future use.
+         * Sets the frame data received from the camera. The previous unused frame buffer (if present)
+         * is added back to the camera by the mailbox, which keeps a pending reference to the frame
+         * data for future use.
          */
         @SuppressWarnings("ByteBufferBackingArray")
         void setNextFrame(byte[] data, Camera camera) {
-            synchronized (lock) {
-                if (pendingFrameData != null) {
-                    camera.addCallbackBuffer(pendingFrameData.array());
-                    pendingFrameData = null;
-                }
-
-                if (!bytesToByteBuffer.containsKey(data)) {
-                    Log.d(
-                            TAG,
-                            "Skipping frame. Could not find ByteBuffer associated with the image "
-                                    + "data from the camera.");
-                    return;
-                }
-
-                pendingFrameData = bytesToByteBuffer.get(data);
-
-                // Notify the processor thread if it is waiting on the next frame (see below).
-                lock.notifyAll();
+            ByteBuffer frame = bytesToByteBuffer.get(data);
+            if (frame == null) {
+                Log.d(
+                        TAG,
+                        "Skipping frame. Could not find ByteBuffer associated with the image "
+                                + "data from the camera.");
+                return;
             }
+            mailbox.offer(frame);
         }
 
         /**
          * As long as the processing thread is active, this executes detection on frames continuously.
          * The next pending frame is either immediately available or hasn't been received yet. Once it
-         * is available, we transfer the frame info to local variables and run detection on that frame.
-         * It immediately loops back for the next frame without pausing.
+         * is available, we run detection on that frame. It immediately loops back for the next frame
+         * without pausing.
          *
          * <p>If detection takes longer than the time in between new frames from the camera, this will
          * mean that this loop will run without ever waiting on a frame, avoiding any context switching
@@ -493,49 +640,33 @@ public class CameraSource {
          * <p>If you find that this is using more CPU than you'd like, you should probably decrease the
          * FPS setting above to allow for some idle time in between frames.
          */
-        @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
         @Override
         public void run() {
-            ByteBuffer data;
-
-            while (true) {
-                synchronized (lock) {
-                    while (active && (pendingFrameData == null)) {
-                        try {
-                            // Wait for the next frame to be received from the camera, since we don't have it yet.
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            Log.e(TAG, "Frame processing loop terminated.", e);
-                            return;
+            mailbox.runLoop(
+                    data -> {
+                        int luminanceLevel = luminanceMonitor.update(
+                                data, previewSize.getWidth(), previewSize.getHeight());
+                        if (luminanceLevel != appliedLuminanceLevel) {
+                            applyLuminanceLevel(luminanceLevel);
+                        }
+                        InactivityDetector detector = inactivityDetector;
+                        if (detector != null) {
+                            detector.onLuminance(luminanceMonitor.getLastLuminance());
                         }
-                    }
-
-                    if (!active) {
-                        // Exit the loop once this camera source is stopped or released.  We check this here,
-                        // immediately after the wait() above, to handle the case where setActive(false) had
-                        // been called, triggering the termination of this loop.
-                        return;
-                    }
-
-                    // Hold onto the frame data locally, so that we can use this for detection
-                    // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-                    // recycled back to the camera before we are done using that data.
-                    data = pendingFrameData;
-                    pendingFrameData = null;
-                }
 
-                try {
-                    synchronized (processorLock) {
-                        FrameMetadata frameMetadata =
-                                new FrameMetadata(previewSize.getWidth(), previewSize.getHeight(), rotation);
-                        frameProcessor.process(data, frameMetadata, graphicOverlay);
-                    }
-                } catch (Exception t) {
-                    Log.e(TAG, "Exception thrown from receiver.", t);
-                } finally {
-                    camera.addCallbackBuffer(data.array());
-                }
-            }
+                        FrameProcessor processor = frameProcessor.get();
+                        if (processor == null) {
+                            return false;
+                        }
+                        FrameRecorder recorder = frameRecorder;
+                        if (recorder != null) {
+                            recorder.record(data, frameMetadata);
+                        }
+                        // The processor releases the frame once detection is done with it.
+                        processor.process(data, frameMetadata, graphicOverlay, this::recycle);
+                        return true;
+                    },
+                    e -> Log.e(TAG, "Exception thrown from receiver.", e));
         }
     }
 }
@@ -27,12 +27,9 @@ import android.widget.FrameLayout;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.android.gms.common.images.Size;
-
 import java.io.IOException;
 
 import de.fau.cs.mad.carwatch.R;
-import de.fau.cs.mad.carwatch.util.Utils;
 
 /**
  * Preview the camera image in the screen.
@@ -45,7 +42,7 @@ public class CameraSourcePreview extends FrameLayout {
     private boolean startRequested = false;
     private boolean surfaceAvailable = false;
     private CameraSource cameraSource;
-    private Size cameraPreviewSize;
+    private FrameMetadata cameraFrameMetadata;
 
     public CameraSourcePreview(@NonNull Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
@@ -93,18 +90,14 @@ public class CameraSourcePreview extends FrameLayout {
         int layoutWidth = right - left;
         int layoutHeight = bottom - top;
 
-        if (cameraSource != null && cameraSource.getPreviewSize() != null) {
-            cameraPreviewSize = cameraSource.getPreviewSize();
+        if (cameraSource != null && cameraSource.getFrameMetadata() != null) {
+            cameraFrameMetadata = cameraSource.getFrameMetadata();
         }
 
         float previewSizeRatio = (float) layoutWidth / layoutHeight;
-        if (cameraPreviewSize != null) {
-            if (Utils.isPortraitMode(getContext())) {
-                // Camera's natural orientation is landscape, so need to swap width and height.
-                previewSizeRatio = (float) cameraPreviewSize.getHeight() / cameraPreviewSize.getWidth();
-            } else {
-                previewSizeRatio = (float) cameraPreviewSize.getWidth() / cameraPreviewSize.getHeight();
-            }
+        if (cameraFrameMetadata != null) {
+            // The preview is shown upright, i.e., rotated from the camera's natural orientation.
+            previewSizeRatio = (float) cameraFrameMetadata.uprightWidth / cameraFrameMetadata.uprightHeight;
         }
 
         // Match the width of the child view to its parent.
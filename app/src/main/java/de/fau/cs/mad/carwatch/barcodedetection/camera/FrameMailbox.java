@@ -0,0 +1,143 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-slot mailbox that hands the most recent frame from a producer (e.g., the camera callback
+ * thread) to exactly one consumer thread.
+ *
+ * <p>The slot is swapped atomically, so neither side ever blocks the other: if the producer
+ * delivers a new frame before the consumer has picked up the previous one, the stale frame is
+ * handed back to the {@link Recycler} right away. The consumer parks while the slot is empty and
+ * is unparked by the producer.
+ *
+ * <p>This class has no Android dependencies so that {@link #runLoop(Consumer, ErrorHandler)} can
+ * be driven from plain JVM code.
+ */
+class FrameMailbox<T> {
+
+    /**
+     * Returns frames that are no longer needed to their owner (e.g., back to the camera).
+     */
+    interface Recycler<T> {
+        void recycle(T frame);
+    }
+
+    /**
+     * Consumes frames taken from the mailbox.
+     */
+    interface Consumer<T> {
+        /**
+         * @return whether the consumer has taken over the frame, in which case it is responsible for
+         * recycling it
+         */
+        boolean consume(T frame) throws Exception;
+    }
+
+    /**
+     * Receives exceptions thrown by the {@link Consumer}, so that a single bad frame does not
+     * terminate the loop.
+     */
+    interface ErrorHandler {
+        void onError(Exception e);
+    }
+
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private final Recycler<T> recycler;
+
+    private volatile boolean active;
+    private volatile Thread consumerThread;
+
+    FrameMailbox(Recycler<T> recycler) {
+        this.recycler = recycler;
+    }
+
+    /**
+     * Marks the mailbox as active/not active and wakes up a parked consumer.
+     */
+    void setActive(boolean active) {
+        this.active = active;
+        wakeConsumer();
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    boolean hasPendingFrame() {
+        return slot.get() != null;
+    }
+
+    /**
+     * Publishes a new frame, recycling the previous pending frame if it has not been consumed yet.
+     */
+    void offer(T frame) {
+        T stale = slot.getAndSet(frame);
+        if (stale != null) {
+            recycler.recycle(stale);
+        }
+        wakeConsumer();
+    }
+
+    /**
+     * Returns the pending frame, parking the calling thread until one is available.
+     *
+     * @return the latest frame, or {@code null} once the mailbox has been deactivated.
+     */
+    T take() {
+        consumerThread = Thread.currentThread();
+        try {
+            while (active) {
+                T frame = slot.getAndSet(null);
+                if (frame != null) {
+                    return frame;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            consumerThread = null;
+        }
+    }
+
+    /**
+     * Recycles the pending frame, if any. Call after the consumer has terminated.
+     */
+    void clear() {
+        T stale = slot.getAndSet(null);
+        if (stale != null) {
+            recycler.recycle(stale);
+        }
+    }
+
+    /**
+     * Processes frames on the calling thread as long as the mailbox is active. Each frame is
+     * recycled after it was consumed, unless the consumer has taken it over.
+     */
+    void runLoop(Consumer<T> consumer, ErrorHandler errorHandler) {
+        T frame;
+        while ((frame = take()) != null) {
+            boolean takenOver = false;
+            try {
+                takenOver = consumer.consume(frame);
+            } catch (Exception e) {
+                errorHandler.onError(e);
+            } finally {
+                if (!takenOver) {
+                    recycler.recycle(frame);
+                }
+            }
+        }
+    }
+
+    private void wakeConsumer() {
+        Thread thread = consumerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -16,16 +16,50 @@
 
 package de.fau.cs.mad.carwatch.barcodedetection.camera;
 
-/** Metadata info of a camera frame. */
-class FrameMetadata {
+/**
+ * Geometry of the camera frames: size in sensor orientation, the clockwise rotation in degrees
+ * that makes a frame upright and whether it is mirrored (front camera). Immutable, so that a single
+ * instance is shared by all frames of a camera session.
+ *
+ * <p>Detectors report coordinates in the upright frame; {@link #toViewX(float, int)} and {@link
+ * #toViewY(float, int)} map them into a view that shows the upright frame scaled to its size.
+ */
+public class FrameMetadata {
+
+  public final int width;
+  public final int height;
+  public final int rotation;
+  public final boolean mirrored;
 
-  final int width;
-  final int height;
-  final int rotation;
+  /** Size of the upright frame, i.e., width and height are swapped for 90 and 270 degrees. */
+  public final int uprightWidth;
+  public final int uprightHeight;
+
+  public FrameMetadata(int width, int height, int rotation) {
+    this(width, height, rotation, false);
+  }
 
-  FrameMetadata(int width, int height, int rotation) {
+  public FrameMetadata(int width, int height, int rotation, boolean mirrored) {
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("Invalid rotation: " + rotation);
+    }
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    this.mirrored = mirrored;
+    boolean swapped = rotation == 90 || rotation == 270;
+    this.uprightWidth = swapped ? height : width;
+    this.uprightHeight = swapped ? width : height;
+  }
+
+  /** Maps an x coordinate of the upright frame into a view of the given width. */
+  public float toViewX(float x, int viewWidth) {
+    float scaled = x * viewWidth / uprightWidth;
+    return mirrored ? viewWidth - scaled : scaled;
+  }
+
+  /** Maps a y coordinate of the upright frame into a view of the given height. */
+  public float toViewY(float y, int viewHeight) {
+    return y * viewHeight / uprightHeight;
   }
 }
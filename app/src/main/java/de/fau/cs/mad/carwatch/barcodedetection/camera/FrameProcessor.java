@@ -24,9 +24,19 @@ import java.nio.ByteBuffer;
 public interface FrameProcessor {
 
     /**
-     * Processes the input frame with the underlying detector.
+     * Hands a frame buffer back to its owner (e.g., the camera) once it is no longer read.
      */
-    void process(ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay);
+    interface FrameReleaser {
+        void release(ByteBuffer data);
+    }
+
+    /**
+     * Processes the input frame with the underlying detector. The processor owns the frame buffer
+     * until it calls {@code releaser} with it, which it does exactly once, possibly on another
+     * thread.
+     */
+    void process(
+            ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay, FrameReleaser releaser);
 
     /**
      * Stops the underlying detector and release resources.
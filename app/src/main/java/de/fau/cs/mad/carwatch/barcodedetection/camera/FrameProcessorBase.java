@@ -18,74 +18,236 @@ package de.fau.cs.mad.carwatch.barcodedetection.camera;
 
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
 
 import com.google.android.gms.tasks.Task;
-import com.google.mlkit.vision.common.InputImage;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Abstract base class of {@link FrameProcessor}.
+ *
+ * <p>Only the most recent frame is kept while the detector is busy. At most {@code
+ * maxFramesInFlight} frames are detected at the same time; a slot is released whenever detection
+ * of a frame completes, no matter whether it succeeded, failed or was cancelled, and the pending
+ * frame (if any) is started right away. With two frames in flight, the detector can work on one
+ * frame while the next one is prepared.
+ *
+ * <p>Frame buffers are released once detection of the frame has completed, as detectors may read
+ * them asynchronously, or right away if a pending frame is replaced or dropped.
  */
 public abstract class FrameProcessorBase<T> implements FrameProcessor {
 
+    /**
+     * Notified whenever detection of a frame has completed, before its buffer is released (e.g.,
+     * to measure the pipeline when replaying recorded frames).
+     */
+    public interface DetectionListener<T> {
+        /**
+         * @param results results of the frame, or null if detection failed or was cancelled. Also
+         *                called for results that are not delivered because those of a newer frame
+         *                already were.
+         */
+        void onDetectionCompleted(ByteBuffer data, @Nullable T results);
+    }
+
     private static final String TAG = FrameProcessorBase.class.getSimpleName();
 
+    public static final int MIN_FRAMES_IN_FLIGHT = 1;
+    public static final int MAX_FRAMES_IN_FLIGHT = 2;
+
+    // Default executor for delivering results, shared by all processors.
+    private static Executor defaultResultExecutor;
+
+    // Releases frame buffers on the thread completing the detection, independent of the result
+    // executor.
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final int maxFramesInFlight;
+
     // To keep the latest frame and its metadata.
-    @GuardedBy("this")
-    private ByteBuffer latestFrame;
+    private final AtomicReference<PendingFrame> latestFrame = new AtomicReference<>();
 
-    @GuardedBy("this")
-    private FrameMetadata latestFrameMetaData;
+    // Number of frames currently being processed by the detector.
+    private final AtomicInteger framesInFlight = new AtomicInteger(0);
 
-    // To keep the frame and metadata in process.
-    @GuardedBy("this")
-    private ByteBuffer processingFrame;
+    // Sequence numbers, to drop results that complete after those of a newer frame.
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    private final AtomicLong lastDeliveredSequence = new AtomicLong(-1);
 
-    @GuardedBy("this")
-    private FrameMetadata processingFrameMetaData;
+    @Nullable
+    private volatile DetectionListener<T> detectionListener;
+
+    protected FrameProcessorBase() {
+        this(MIN_FRAMES_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxFramesInFlight number of frames that may be detected at the same time, between
+     *                          {@link #MIN_FRAMES_IN_FLIGHT} and {@link #MAX_FRAMES_IN_FLIGHT}
+     */
+    protected FrameProcessorBase(int maxFramesInFlight) {
+        this.maxFramesInFlight = Math.max(MIN_FRAMES_IN_FLIGHT, Math.min(MAX_FRAMES_IN_FLIGHT, maxFramesInFlight));
+    }
 
     @Override
-    public synchronized void process(
-            ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
-        latestFrame = data;
-        latestFrameMetaData = frameMetadata;
-        if (processingFrame == null && processingFrameMetaData == null) {
-            processLatestFrame(graphicOverlay);
+    public void process(
+            ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay, FrameReleaser releaser) {
+        PendingFrame replaced = latestFrame.getAndSet(
+                new PendingFrame(data, frameMetadata, nextSequence.getAndIncrement(), releaser));
+        if (replaced != null) {
+            replaced.release();
         }
+        startPendingFrames(graphicOverlay);
+    }
+
+    public void setDetectionListener(@Nullable DetectionListener<T> detectionListener) {
+        this.detectionListener = detectionListener;
     }
 
-    private synchronized void processLatestFrame(GraphicOverlay graphicOverlay) {
-        processingFrame = latestFrame;
-        processingFrameMetaData = latestFrameMetaData;
-        latestFrame = null;
-        latestFrameMetaData = null;
-        if (processingFrame != null && processingFrameMetaData != null) {
-            InputImage image = InputImage.fromByteBuffer(
-                    processingFrame,
-                    processingFrameMetaData.width,
-                    processingFrameMetaData.height,
-                    processingFrameMetaData.rotation,
-                    InputImage.IMAGE_FORMAT_NV21
-            );
-            detectInImage(image)
-                    .addOnSuccessListener(
-                            results -> {
-                                FrameProcessorBase.this.onSuccess(image, results, graphicOverlay);
-                                processLatestFrame(graphicOverlay);
-                            })
-                    .addOnFailureListener(FrameProcessorBase.this::onFailure);
+    /**
+     * Drops the frame waiting for detection, so that no further detection is started once the
+     * detection currently in flight has finished. Processing resumes with the next call to
+     * {@link #process}.
+     */
+    protected void dropPendingFrame() {
+        PendingFrame dropped = latestFrame.getAndSet(null);
+        if (dropped != null) {
+            dropped.release();
         }
     }
 
-    protected abstract Task<T> detectInImage(InputImage image);
+    /**
+     * Starts detection on the pending frame as long as a slot is free.
+     */
+    private void startPendingFrames(GraphicOverlay graphicOverlay) {
+        while (latestFrame.get() != null) {
+            int inFlight = framesInFlight.get();
+            if (inFlight >= maxFramesInFlight) {
+                // The pending frame is picked up once a slot is released.
+                return;
+            }
+            if (!framesInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            PendingFrame frame = latestFrame.getAndSet(null);
+            if (frame == null) {
+                // Taken by a concurrent caller, give the slot back and check again.
+                framesInFlight.decrementAndGet();
+                continue;
+            }
+            startFrame(frame, graphicOverlay);
+        }
+    }
+
+    private void startFrame(PendingFrame frame, GraphicOverlay graphicOverlay) {
+        Task<T> task;
+        try {
+            task = detectInFrame(frame.data, frame.metadata);
+        } catch (RuntimeException e) {
+            completeFrame(frame, null);
+            releaseSlot(graphicOverlay);
+            onFailure(e);
+            return;
+        }
+
+        task.addOnCompleteListener(DIRECT_EXECUTOR, completedTask ->
+                completeFrame(frame, completedTask.isSuccessful() ? completedTask.getResult() : null));
+        task.addOnCompleteListener(getResultExecutor(), completedTask -> {
+            try {
+                if (completedTask.isCanceled()) {
+                    Log.d(TAG, "Detection was cancelled.");
+                } else if (!completedTask.isSuccessful()) {
+                    Exception e = completedTask.getException();
+                    onFailure(e != null ? e : new IllegalStateException("Detection failed."));
+                } else if (markDelivered(frame.sequence)) {
+                    onSuccess(frame.metadata, completedTask.getResult(), graphicOverlay);
+                }
+            } finally {
+                releaseSlot(graphicOverlay);
+            }
+        });
+    }
+
+    private void completeFrame(PendingFrame frame, @Nullable T results) {
+        DetectionListener<T> listener = detectionListener;
+        if (listener != null) {
+            listener.onDetectionCompleted(frame.data, results);
+        }
+        frame.release();
+    }
+
+    private void releaseSlot(GraphicOverlay graphicOverlay) {
+        framesInFlight.decrementAndGet();
+        startPendingFrames(graphicOverlay);
+    }
+
+    /**
+     * Returns whether the result of the frame is newer than all results delivered so far.
+     */
+    private boolean markDelivered(long sequence) {
+        while (true) {
+            long lastDelivered = lastDeliveredSequence.get();
+            if (sequence <= lastDelivered) {
+                return false;
+            }
+            if (lastDeliveredSequence.compareAndSet(lastDelivered, sequence)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the executor {@link #onSuccess} and {@link #onFailure} are called on. Defaults to a
+     * background thread shared by all processors, so that results never wait for the main thread.
+     */
+    protected Executor getResultExecutor() {
+        synchronized (FrameProcessorBase.class) {
+            if (defaultResultExecutor == null) {
+                defaultResultExecutor = Executors.newSingleThreadExecutor();
+            }
+            return defaultResultExecutor;
+        }
+    }
 
     /**
-     * Be called when the detection succeeds.
+     * Runs detection on the given NV21 frame. The frame buffer is not modified until the returned
+     * task has completed.
+     */
+    protected abstract Task<T> detectInFrame(ByteBuffer data, FrameMetadata frameMetadata);
+
+    /**
+     * Be called when the detection succeeds, on the {@link #getResultExecutor() result executor}.
+     * Results of a frame are dropped if the result of a newer frame was delivered first.
      */
     protected abstract void onSuccess(
-            InputImage image, T results, GraphicOverlay graphicOverlay);
+            FrameMetadata frameMetadata, T results, GraphicOverlay graphicOverlay);
 
+    /**
+     * Be called when the detection fails, on the {@link #getResultExecutor() result executor}.
+     */
     protected abstract void onFailure(Exception e);
+
+    private static class PendingFrame {
+        final ByteBuffer data;
+        final FrameMetadata metadata;
+        final long sequence;
+        final FrameReleaser releaser;
+
+        PendingFrame(ByteBuffer data, FrameMetadata metadata, long sequence, FrameReleaser releaser) {
+            this.data = data;
+            this.metadata = metadata;
+            this.sequence = sequence;
+            this.releaser = releaser;
+        }
+
+        void release() {
+            releaser.release(data);
+        }
+    }
 }
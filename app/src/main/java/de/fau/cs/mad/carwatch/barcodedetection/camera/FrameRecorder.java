@@ -0,0 +1,115 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dumps camera frames together with their {@link FrameMetadata} to a file, so that a scan session
+ * can later be replayed with {@link FrameReplaySource} without a camera.
+ *
+ * <p>The file starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per frame:
+ * capture timestamp (ns), width, height, rotation, data length and the NV21 data.
+ *
+ * <p>Frames are copied on the calling thread and written on a dedicated background thread, so the
+ * camera buffers can be recycled right away. At most {@code maxFrames} frames are recorded, and
+ * frames are dropped while the writer is lagging behind.
+ */
+public class FrameRecorder {
+
+    private static final String TAG = FrameRecorder.class.getSimpleName();
+
+    static final int MAGIC = 0x43574652; // "CWFR"
+    static final int VERSION = 1;
+
+    private static final int MAX_PENDING_FRAMES = 4;
+
+    private final File file;
+    private final int maxFrames;
+    private final ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger numRecorded = new AtomicInteger(0);
+    private final AtomicInteger numPending = new AtomicInteger(0);
+
+    private DataOutputStream outputStream;
+
+    public FrameRecorder(File file, int maxFrames) {
+        this.file = file;
+        this.maxFrames = maxFrames;
+        writerExecutor.execute(this::open);
+    }
+
+    /**
+     * Records a frame. Must be called before the frame buffer is handed back to the camera.
+     */
+    public void record(ByteBuffer data, FrameMetadata frameMetadata) {
+        if (numRecorded.get() >= maxFrames || numPending.get() >= MAX_PENDING_FRAMES) {
+            return;
+        }
+        numRecorded.incrementAndGet();
+        numPending.incrementAndGet();
+
+        long timestampNanos = System.nanoTime();
+        ByteBuffer source = data.duplicate();
+        source.rewind();
+        byte[] copy = new byte[source.remaining()];
+        source.get(copy);
+
+        writerExecutor.execute(() -> {
+            write(timestampNanos, frameMetadata, copy);
+            numPending.decrementAndGet();
+        });
+    }
+
+    /**
+     * Flushes all pending frames and closes the file.
+     */
+    public void close() {
+        writerExecutor.execute(() -> {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                    Log.i(TAG, "Recorded " + numRecorded.get() + " frames to " + file.getAbsolutePath());
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not close frame recording.", e);
+                }
+                outputStream = null;
+            }
+        });
+        writerExecutor.shutdown();
+    }
+
+    private void open() {
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not create frame recording " + file.getAbsolutePath(), e);
+            outputStream = null;
+        }
+    }
+
+    private void write(long timestampNanos, FrameMetadata frameMetadata, byte[] data) {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.writeLong(timestampNanos);
+            outputStream.writeInt(frameMetadata.width);
+            outputStream.writeInt(frameMetadata.height);
+            outputStream.writeInt(frameMetadata.rotation);
+            outputStream.writeInt(data.length);
+            outputStream.write(data);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write frame to recording.", e);
+        }
+    }
+}
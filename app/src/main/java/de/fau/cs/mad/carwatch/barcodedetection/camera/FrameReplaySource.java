@@ -0,0 +1,317 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
+import de.fau.cs.mad.carwatch.barcodedetection.Detector;
+
+/**
+ * Replays a frame recording written by {@link FrameRecorder}, either at the recorded frame rate or
+ * as fast as possible, and measures decode rate and latency. Does not require a camera, so scanner
+ * performance can be compared on a JVM or Robolectric host.
+ *
+ * <p>Every frame is read into a new buffer, as detectors may still read previous frames.
+ */
+public class FrameReplaySource {
+
+    // Time to wait for the frames still being detected once the whole recording was replayed.
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    /**
+     * Receives the replayed frames.
+     */
+    public interface FrameSink {
+        /**
+         * @return whether a barcode was decoded in the frame
+         */
+        boolean onFrame(ByteBuffer data, FrameMetadata frameMetadata) throws Exception;
+    }
+
+    private interface FrameReader {
+        void onFrame(int frameIndex, ByteBuffer data, FrameMetadata frameMetadata) throws InterruptedException;
+    }
+
+    private final File recording;
+    private final boolean realTime;
+
+    /**
+     * @param realTime if true, frames are delivered with the delays they were recorded with,
+     *                 otherwise as fast as the sink accepts them
+     */
+    public FrameReplaySource(File recording, boolean realTime) {
+        this.recording = recording;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Runs every frame through the detector and waits for its result.
+     */
+    public Report replay(Detector detector) throws IOException, InterruptedException {
+        return replay((data, frameMetadata) -> !await(detector.detect(data, frameMetadata)).isEmpty());
+    }
+
+    /**
+     * Feeds the frames to the frame processor without waiting for detection, like the camera does.
+     * Latency is measured from handing a frame to the processor until its detection completed.
+     * Frames the processor drops because a newer frame arrived in the meantime are counted as
+     * skipped. Results are delivered through the processor as usual.
+     *
+     * <p>Returns once the detection of all frames has completed.
+     */
+    public Report replay(FrameProcessorBase<List<DetectedBarcode>> processor, @Nullable GraphicOverlay graphicOverlay)
+            throws IOException, InterruptedException {
+        Report report = new Report();
+        // Index and hand-over time of the frames whose detection has not completed yet.
+        // ByteBuffer's equals compares the content, so frames are kept by identity.
+        Map<ByteBuffer, long[]> pendingFrames = Collections.synchronizedMap(new IdentityHashMap<>());
+        Semaphore releasedFrames = new Semaphore(0);
+
+        processor.setDetectionListener((data, results) -> {
+            long[] pendingFrame = pendingFrames.remove(data);
+            if (pendingFrame == null) {
+                return;
+            }
+            if (results == null) {
+                report.addError();
+            }
+            report.addFrame((int) pendingFrame[0], System.nanoTime() - pendingFrame[1],
+                    results != null && !results.isEmpty());
+        });
+        try {
+            int numFrames = read((frameIndex, data, frameMetadata) -> {
+                pendingFrames.put(data, new long[]{frameIndex, System.nanoTime()});
+                processor.process(data, frameMetadata, graphicOverlay, buffer -> {
+                    if (pendingFrames.remove(buffer) != null) {
+                        report.addSkippedFrame();
+                    }
+                    releasedFrames.release();
+                });
+            });
+            if (!releasedFrames.tryAcquire(numFrames, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Frames still in detection after " + DRAIN_TIMEOUT_MS + " ms");
+            }
+        } finally {
+            processor.setDetectionListener(null);
+        }
+        return report;
+    }
+
+    public Report replay(FrameSink sink) throws IOException, InterruptedException {
+        Report report = new Report();
+        read((frameIndex, data, frameMetadata) -> {
+            long start = System.nanoTime();
+            boolean decoded;
+            try {
+                decoded = sink.onFrame(data, frameMetadata);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                decoded = false;
+                report.addError();
+            }
+            report.addFrame(frameIndex, System.nanoTime() - start, decoded);
+        });
+        return report;
+    }
+
+    /**
+     * @return the number of frames read
+     */
+    private int read(FrameReader reader) throws IOException, InterruptedException {
+        try (DataInputStream inputStream =
+                     new DataInputStream(new BufferedInputStream(new FileInputStream(recording)))) {
+            if (inputStream.readInt() != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + recording);
+            }
+            int version = inputStream.readInt();
+            if (version != FrameRecorder.VERSION) {
+                throw new IOException("Unsupported frame recording version " + version);
+            }
+
+            FrameMetadata frameMetadata = null;
+            int frameIndex = 0;
+            long firstTimestamp = -1;
+            long replayStart = System.nanoTime();
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = inputStream.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int width = inputStream.readInt();
+                int height = inputStream.readInt();
+                int rotation = inputStream.readInt();
+                // The geometry is shared by consecutive frames, as it is by CameraSource.
+                if (frameMetadata == null || frameMetadata.width != width
+                        || frameMetadata.height != height || frameMetadata.rotation != rotation) {
+                    frameMetadata = new FrameMetadata(width, height, rotation);
+                }
+                byte[] buffer = new byte[inputStream.readInt()];
+                inputStream.readFully(buffer);
+
+                if (firstTimestamp < 0) {
+                    firstTimestamp = timestamp;
+                }
+                if (realTime) {
+                    long delayNanos = (timestamp - firstTimestamp) - (System.nanoTime() - replayStart);
+                    if (delayNanos > 0) {
+                        Thread.sleep(delayNanos / 1_000_000, (int) (delayNanos % 1_000_000));
+                    }
+                }
+
+                reader.onFrame(frameIndex++, ByteBuffer.wrap(buffer), frameMetadata);
+            }
+            return frameIndex;
+        }
+    }
+
+    /**
+     * Waits for the task on the calling thread. Unlike {@link com.google.android.gms.tasks.Tasks#await},
+     * this does not need a main looper to tell whether it is called on the main thread, so it also
+     * works on a JVM host.
+     */
+    private static <T> T await(Task<T> task) throws Exception {
+        CountDownLatch completed = new CountDownLatch(1);
+        task.addOnCompleteListener(DIRECT_EXECUTOR, completedTask -> completed.countDown());
+        completed.await();
+        if (task.isCanceled()) {
+            throw new CancellationException("Detection was cancelled.");
+        }
+        if (!task.isSuccessful()) {
+            Exception e = task.getException();
+            throw e != null ? e : new IllegalStateException("Detection failed.");
+        }
+        return task.getResult();
+    }
+
+    /**
+     * Decode rate and latency statistics of a replay. Frames that were skipped are not part of the
+     * decode rate and latency.
+     */
+    public static class Report {
+
+        private long[] latenciesNanos = new long[64];
+        private int numFrames = 0;
+        private int numDecoded = 0;
+        private int numSkipped = 0;
+        private int numErrors = 0;
+        private int firstDecodedFrame = -1;
+
+        /**
+         * @param frameIndex index of the frame in the recording
+         */
+        synchronized void addFrame(int frameIndex, long latencyNanos, boolean decoded) {
+            if (numFrames == latenciesNanos.length) {
+                latenciesNanos = Arrays.copyOf(latenciesNanos, numFrames * 2);
+            }
+            latenciesNanos[numFrames] = latencyNanos;
+            if (decoded) {
+                if (firstDecodedFrame < 0 || frameIndex < firstDecodedFrame) {
+                    firstDecodedFrame = frameIndex;
+                }
+                numDecoded++;
+            }
+            numFrames++;
+        }
+
+        synchronized void addSkippedFrame() {
+            numSkipped++;
+        }
+
+        synchronized void addError() {
+            numErrors++;
+        }
+
+        /**
+         * Returns the number of frames detection was run on.
+         */
+        public synchronized int getNumFrames() {
+            return numFrames;
+        }
+
+        public synchronized int getNumDecoded() {
+            return numDecoded;
+        }
+
+        /**
+         * Returns the number of frames that were dropped without detection, as a newer frame arrived
+         * while the detector was busy.
+         */
+        public synchronized int getNumSkipped() {
+            return numSkipped;
+        }
+
+        public synchronized int getNumErrors() {
+            return numErrors;
+        }
+
+        /**
+         * Returns the index of the first frame of the recording a barcode was decoded in, or -1.
+         */
+        public synchronized int getFirstDecodedFrame() {
+            return firstDecodedFrame;
+        }
+
+        public synchronized double getDecodeRate() {
+            return numFrames == 0 ? 0 : (double) numDecoded / numFrames;
+        }
+
+        public synchronized double getMeanLatencyMs() {
+            if (numFrames == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (int i = 0; i < numFrames; i++) {
+                sum += latenciesNanos[i];
+            }
+            return sum / 1e6 / numFrames;
+        }
+
+        /**
+         * Returns the latency percentile (0-100) in milliseconds.
+         */
+        public synchronized double getLatencyPercentileMs(double percentile) {
+            if (numFrames == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latenciesNanos, numFrames);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * numFrames) - 1;
+            return sorted[Math.max(0, Math.min(numFrames - 1, index))] / 1e6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ENGLISH,
+                    "frames=%d decoded=%d (%.1f%%) skipped=%d firstDecodedFrame=%d errors=%d "
+                            + "latency[ms]: mean=%.2f p50=%.2f p95=%.2f max=%.2f",
+                    numFrames, numDecoded, getDecodeRate() * 100, numSkipped, firstDecodedFrame, numErrors,
+                    getMeanLatencyMs(), getLatencyPercentileMs(50), getLatencyPercentileMs(95),
+                    getLatencyPercentileMs(100));
+        }
+    }
+}
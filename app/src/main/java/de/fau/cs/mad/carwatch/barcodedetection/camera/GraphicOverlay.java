@@ -23,13 +23,10 @@ import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.google.android.gms.common.images.Size;
-
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import de.fau.cs.mad.carwatch.util.Utils;
-
 /**
  * A view which renders a series of custom graphics to be overlaid on top of an associated preview
  * (i.e., the camera preview). The creator can add graphics objects, update the objects, and remove
@@ -43,13 +40,14 @@ import de.fau.cs.mad.carwatch.util.Utils;
  * #translateY(float)} to convert to view coordinate from the preview's coordinate.
  */
 public class GraphicOverlay extends View {
-    private final Object lock = new Object();
 
-    private int previewWidth;
-    private float widthScaleFactor = 1.0f;
-    private int previewHeight;
-    private float heightScaleFactor = 1.0f;
-    private final List<Graphic> graphics = new ArrayList<>();
+    // Geometry of the camera frames, used to map detection coordinates into the view.
+    private FrameMetadata frameMetadata;
+
+    // Graphics are retained across frames and only swapped when the displayed state changes. The
+    // list is immutable and replaced with a single write, so drawing reads it once without a lock
+    // and never observes a partially swapped state, even if it is cleared from the camera thread.
+    private volatile List<Graphic> graphics = Collections.emptyList();
 
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
@@ -76,58 +74,77 @@ public class GraphicOverlay extends View {
     }
 
     /**
-     * Removes all graphics from the overlay.
+     * Removes all graphics from the overlay. May be called from any thread.
      */
     public void clear() {
-        synchronized (lock) {
-            graphics.clear();
-        }
+        graphics = Collections.emptyList();
         postInvalidate();
     }
 
     /**
-     * Adds a graphic to the overlay.
+     * Adds a graphic to the overlay. Must be called on the main thread.
      */
     public void add(Graphic graphic) {
-        synchronized (lock) {
-            graphics.add(graphic);
+        List<Graphic> added = new ArrayList<>(graphics);
+        added.add(graphic);
+        graphics = Collections.unmodifiableList(added);
+    }
+
+    /**
+     * Makes the given graphic the only one shown on the overlay. Does nothing (in particular, does
+     * not invalidate the view) if it is already the only graphic. Must be called on the main thread.
+     *
+     * @return whether the displayed graphics changed
+     */
+    public boolean show(Graphic graphic) {
+        List<Graphic> current = graphics;
+        if (current.size() == 1 && current.get(0) == graphic) {
+            return false;
         }
+        graphics = Collections.singletonList(graphic);
+        postInvalidate();
+        return true;
     }
 
     /**
-     * Sets the camera attributes for size and facing direction, which informs how to transform image
-     * coordinates later.
+     * Sets the camera attributes for size, rotation and facing direction, which informs how to
+     * transform image coordinates later.
      */
     public void setCameraInfo(CameraSource cameraSource) {
-        Size previewSize = cameraSource.getPreviewSize();
-        if (Utils.isPortraitMode(getContext())) {
-            // Swap width and height when in portrait, since camera's natural orientation is landscape.
-            previewWidth = previewSize.getHeight();
-            previewHeight = previewSize.getWidth();
-        } else {
-            previewWidth = previewSize.getWidth();
-            previewHeight = previewSize.getHeight();
-        }
+        frameMetadata = cameraSource.getFrameMetadata();
     }
 
+    /**
+     * Maps an x coordinate of the upright camera frame into the view, mirroring it for the front
+     * camera.
+     */
     public float translateX(float x) {
-        return x * widthScaleFactor;
+        return frameMetadata != null ? frameMetadata.toViewX(x, getWidth()) : x;
     }
 
+    /**
+     * Maps a y coordinate of the upright camera frame into the view.
+     */
     public float translateY(float y) {
-        return y * heightScaleFactor;
+        return frameMetadata != null ? frameMetadata.toViewY(y, getHeight()) : y;
     }
 
     /**
      * Adjusts the {@code rect}'s coordinate from the preview's coordinate system to the view
-     * coordinate system.
+     * coordinate system and stores the result in {@code out}.
+     *
+     * @return {@code out}, for convenience
      */
-    public RectF translateRect(Rect rect) {
-        return new RectF(
-                translateX(rect.left),
+    public RectF translateRect(Rect rect, RectF out) {
+        float left = translateX(rect.left);
+        float right = translateX(rect.right);
+        // Mirroring swaps the horizontal edges.
+        out.set(
+                Math.min(left, right),
                 translateY(rect.top),
-                translateX(rect.right),
+                Math.max(left, right),
                 translateY(rect.bottom));
+        return out;
     }
 
     /**
@@ -137,15 +154,10 @@ public class GraphicOverlay extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (previewWidth > 0 && previewHeight > 0) {
-            widthScaleFactor = (float) getWidth() / previewWidth;
-            heightScaleFactor = (float) getHeight() / previewHeight;
-        }
-
-        synchronized (lock) {
-            for (Graphic graphic : graphics) {
-                graphic.draw(canvas);
-            }
+        // indexed, so that drawing a frame allocates no iterator
+        List<Graphic> current = graphics;
+        for (int i = 0; i < current.size(); i++) {
+            current.get(i).draw(canvas);
         }
     }
 }
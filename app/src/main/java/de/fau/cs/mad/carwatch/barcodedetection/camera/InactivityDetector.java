@@ -0,0 +1,68 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import android.os.SystemClock;
+
+/**
+ * Detects scan sessions in which nothing happens, e.g., because the phone was left lying on the
+ * nightstand with the scanner open, so that the camera can be paused to save battery.
+ *
+ * <p>A session counts as active while barcode candidates are detected, the user touches the
+ * screen or the scene brightness changes noticeably (i.e., the phone or something in front of it
+ * moves). Signals may be reported from any thread.
+ */
+public class InactivityDetector {
+
+    public static final long DEFAULT_TIMEOUT_MS = 60_000;
+
+    /**
+     * Change in mean luma (0-255) that counts as activity.
+     */
+    private static final int LUMINANCE_CHANGE_THRESHOLD = 12;
+
+    private final long timeoutMs;
+
+    private volatile long lastActivityTime;
+
+    // Only accessed from the frame processing thread.
+    private int referenceLuminance = -1;
+
+    /**
+     * @param timeoutMs time without any activity after which the session counts as inactive
+     */
+    public InactivityDetector(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        markActive();
+    }
+
+    /**
+     * Reports activity, e.g., a detected barcode candidate or a touch.
+     */
+    public void markActive() {
+        lastActivityTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Reports the mean luma of a camera frame. Only to be called from the frame processing thread.
+     */
+    void onLuminance(int luminance) {
+        if (referenceLuminance < 0 || Math.abs(luminance - referenceLuminance) > LUMINANCE_CHANGE_THRESHOLD) {
+            referenceLuminance = luminance;
+            markActive();
+        }
+    }
+
+    /**
+     * Returns the time since the last activity in milliseconds.
+     */
+    public long getInactiveTimeMs() {
+        return SystemClock.elapsedRealtime() - lastActivityTime;
+    }
+
+    public boolean isInactive() {
+        return getInactiveTimeMs() >= timeoutMs;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
@@ -0,0 +1,140 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the scene brightness from the luma (Y) plane of NV21 frames and decides whether the
+ * camera should compensate for a dark scene.
+ *
+ * <p>Compensation is raised in two levels: first the exposure compensation is increased, and if
+ * the scene stays dark, the torch is turned on. Each level is only entered after
+ * {@link #NUM_FRAMES_FOR_DECISION} consecutive dark frames. A level is kept for the rest of the
+ * session: the frames are measured after compensation, so a scene that reads bright with raised
+ * exposure or the torch on is usually only bright because of it. Dropping the level again would
+ * make the scene read dark and the compensation be raised again, toggling the camera parameters
+ * every few frames.
+ *
+ * <p>This class has no Android dependencies and is meant to be called from the frame processing
+ * thread only.
+ */
+class LuminanceMonitor {
+
+    static final int LEVEL_NONE = 0;
+    static final int LEVEL_EXPOSURE = 1;
+    static final int LEVEL_TORCH = 2;
+
+    /**
+     * Mean luma (0-255) below which a frame is considered dark.
+     */
+    static final int DARK_THRESHOLD = 60;
+
+    static final int NUM_FRAMES_FOR_DECISION = 5;
+
+    /**
+     * Only every n-th pixel of every n-th row is sampled, which is plenty for a mean brightness.
+     */
+    private static final int SAMPLE_STEP = 8;
+
+    private final int maxLevel;
+
+    private int level = LEVEL_NONE;
+    private int lastLuminance = 0;
+    private int numDarkFrames = 0;
+
+    // Session summary
+    private int numFrames = 0;
+    private long luminanceSum = 0;
+    private int minLuminance = 255;
+    private int exposureFrame = -1;
+    private int torchFrame = -1;
+
+    /**
+     * @param maxLevel highest compensation level supported by the camera
+     */
+    LuminanceMonitor(int maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Returns the mean luma of the sampled pixels of an NV21 frame.
+     */
+    static int meanLuminance(ByteBuffer data, int width, int height) {
+        long sum = 0;
+        int count = 0;
+        for (int y = SAMPLE_STEP / 2; y < height; y += SAMPLE_STEP) {
+            int rowOffset = y * width;
+            for (int x = SAMPLE_STEP / 2; x < width; x += SAMPLE_STEP) {
+                sum += data.get(rowOffset + x) & 0xFF;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (int) (sum / count);
+    }
+
+    /**
+     * Updates the monitor with a new frame.
+     *
+     * @return the compensation level the camera should use from now on
+     */
+    int update(ByteBuffer data, int width, int height) {
+        int luminance = meanLuminance(data, width, height);
+        lastLuminance = luminance;
+        numFrames++;
+        luminanceSum += luminance;
+        minLuminance = Math.min(minLuminance, luminance);
+
+        if (luminance < DARK_THRESHOLD) {
+            numDarkFrames++;
+        } else {
+            numDarkFrames = 0;
+        }
+
+        if (numDarkFrames >= NUM_FRAMES_FOR_DECISION && level < maxLevel) {
+            level++;
+            numDarkFrames = 0;
+            if (level == LEVEL_EXPOSURE) {
+                exposureFrame = numFrames;
+            } else if (level == LEVEL_TORCH) {
+                torchFrame = numFrames;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the mean luma of the last frame.
+     */
+    int getLastLuminance() {
+        return lastLuminance;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    int getNumFrames() {
+        return numFrames;
+    }
+
+    int getMeanLuminance() {
+        return numFrames == 0 ? 0 : (int) (luminanceSum / numFrames);
+    }
+
+    int getMinLuminance() {
+        return numFrames == 0 ? 0 : minLuminance;
+    }
+
+    /**
+     * Returns the number of frames after which the exposure compensation was first raised, or -1.
+     */
+    int getExposureFrame() {
+        return exposureFrame;
+    }
+
+    /**
+     * Returns the number of frames after which the torch was turned on, or -1.
+     */
+    int getTorchFrame() {
+        return torchFrame;
+    }
+}
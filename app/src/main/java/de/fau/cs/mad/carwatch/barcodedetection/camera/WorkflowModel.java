@@ -22,7 +22,8 @@ import androidx.annotation.MainThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
 
-import com.google.mlkit.vision.barcode.common.Barcode;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeRejection;
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
 
 /**
  * View model for handling application workflow based on camera preview.
@@ -40,10 +41,16 @@ public class WorkflowModel extends AndroidViewModel {
     }
 
     public final MutableLiveData<WorkflowState> workflowState = new MutableLiveData<>();
-    public final MutableLiveData<Barcode> detectedBarcode = new MutableLiveData<>();
+    public final MutableLiveData<DetectedBarcode> detectedBarcode = new MutableLiveData<>();
+    /**
+     * The last barcode rejected by the validator. Cleared by the observer once it was handled.
+     */
+    public final MutableLiveData<BarcodeRejection> rejectedBarcode = new MutableLiveData<>();
 
     private boolean isCameraLive = false;
 
+    private volatile InactivityDetector inactivityDetector;
+
     public WorkflowModel(Application application) {
         super(application);
     }
@@ -65,4 +72,19 @@ public class WorkflowModel extends AndroidViewModel {
         return isCameraLive;
     }
 
+    public void setInactivityDetector(InactivityDetector inactivityDetector) {
+        this.inactivityDetector = inactivityDetector;
+    }
+
+    /**
+     * Reports that the scan session is in use, e.g., because barcode candidates were detected. May
+     * be called from any thread.
+     */
+    public void markScanActivity() {
+        InactivityDetector detector = inactivityDetector;
+        if (detector != null) {
+            detector.markActive();
+        }
+    }
+
 }
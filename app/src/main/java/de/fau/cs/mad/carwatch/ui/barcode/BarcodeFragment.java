@@ -2,11 +2,18 @@ package de.fau.cs.mad.carwatch.ui.barcode;
 
 import android.animation.AnimatorInflater;
 import android.animation.AnimatorSet;
+import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.Window;
+import android.view.WindowManager;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
@@ -15,26 +22,39 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.gms.common.internal.Objects;
 import com.google.android.material.chip.Chip;
-import com.google.mlkit.vision.barcode.common.Barcode;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
 
+import de.fau.cs.mad.carwatch.BuildConfig;
 import de.fau.cs.mad.carwatch.Constants;
 import de.fau.cs.mad.carwatch.R;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeRejection;
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.CameraSource;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.CameraSourcePreview;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.FrameRecorder;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.GraphicOverlay;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.InactivityDetector;
 import de.fau.cs.mad.carwatch.barcodedetection.camera.WorkflowModel;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 
 import static de.fau.cs.mad.carwatch.barcodedetection.camera.WorkflowModel.WorkflowState;
 
-public abstract class BarcodeFragment extends Fragment implements View.OnClickListener, Observer<Barcode> {
+public abstract class BarcodeFragment extends Fragment implements View.OnClickListener, Observer<DetectedBarcode> {
 
     private static final String TAG = BarcodeFragment.class.getSimpleName();
 
+    private static final String FRAME_RECORDING_DIR_NAME = "scan_recordings";
+    private static final int MAX_RECORDED_FRAMES = 300;
+
+    private static final long INACTIVITY_CHECK_INTERVAL_MS = 1000;
+    private static final String PAUSE_REASON_INACTIVITY = "inactivity";
+    private static final String PAUSE_REASON_SCREEN_OFF = "screen_off";
+
     protected CameraSource cameraSource;
     protected CameraSourcePreview preview;
     protected GraphicOverlay graphicOverlay;
@@ -44,6 +64,15 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
     protected WorkflowModel workflowModel;
     protected WorkflowState currentWorkflowState;
 
+    private FrameRecorder frameRecorder;
+
+    private InactivityDetector inactivityDetector;
+    private final Handler inactivityHandler = new Handler(Looper.getMainLooper());
+    private final Runnable inactivityCheck = this::checkInactivity;
+    private boolean isScanningPaused = false;
+    private boolean isKeepScreenOnCleared = false;
+    private long pauseTime;
+
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
 
@@ -54,11 +83,15 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
         graphicOverlay.setOnClickListener(this);
         cameraSource = new CameraSource(graphicOverlay);
 
+        inactivityDetector = new InactivityDetector(InactivityDetector.DEFAULT_TIMEOUT_MS);
+        cameraSource.setInactivityDetector(inactivityDetector);
+
         promptChip = root.findViewById(R.id.bottom_prompt_chip);
         promptChipAnimator = (AnimatorSet) AnimatorInflater.loadAnimator(getContext(), R.animator.bottom_prompt_chip_enter);
         promptChipAnimator.setTarget(promptChip);
 
         setUpWorkflowModel();
+        workflowModel.setInactivityDetector(inactivityDetector);
 
         return root;
     }
@@ -68,6 +101,9 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
         super.onResume();
         workflowModel.markCameraFrozen();
         currentWorkflowState = WorkflowState.NOT_STARTED;
+        // The scanner is restarted when the fragment is resumed, so a pause ends silently.
+        isScanningPaused = false;
+        restoreKeepScreenOn();
     }
 
     @Override
@@ -88,14 +124,21 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
 
     @Override
     public void onClick(View v) {
-
+        if (isScanningPaused) {
+            resumeScanning();
+        } else if (inactivityDetector != null) {
+            inactivityDetector.markActive();
+        }
     }
 
     private void startCameraPreview() {
         if (!workflowModel.isCameraLive() && cameraSource != null) {
             try {
                 workflowModel.markCameraLive();
+                startFrameRecording();
                 preview.start(cameraSource);
+                inactivityDetector.markActive();
+                inactivityHandler.postDelayed(inactivityCheck, INACTIVITY_CHECK_INTERVAL_MS);
 
                 JSONObject json = new JSONObject();
                 LoggerUtil.log(Constants.LOGGER_ACTION_BARCODE_SCAN_INIT, json);
@@ -109,9 +152,112 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
     }
 
     private void stopCameraPreview() {
+        inactivityHandler.removeCallbacks(inactivityCheck);
         if (workflowModel.isCameraLive()) {
             workflowModel.markCameraFrozen();
             preview.stop();
+            stopFrameRecording();
+        }
+    }
+
+    /**
+     * Pauses the camera if nothing happened for the configured timeout or the screen was turned
+     * off, to not drain the battery if the phone was put aside with the scanner open.
+     */
+    private void checkInactivity() {
+        if (!workflowModel.isCameraLive() || getContext() == null) {
+            return;
+        }
+        PowerManager powerManager = (PowerManager) getContext().getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && !powerManager.isInteractive()) {
+            pauseScanning(PAUSE_REASON_SCREEN_OFF);
+        } else if (inactivityDetector.isInactive()) {
+            pauseScanning(PAUSE_REASON_INACTIVITY);
+        } else {
+            inactivityHandler.postDelayed(inactivityCheck, INACTIVITY_CHECK_INTERVAL_MS);
+        }
+    }
+
+    private void pauseScanning(String reason) {
+        long inactiveTime = inactivityDetector.getInactiveTimeMs();
+        stopCameraPreview();
+        isScanningPaused = true;
+        pauseTime = SystemClock.elapsedRealtime();
+        promptChip.setVisibility(View.VISIBLE);
+        promptChip.setText(R.string.prompt_tap_to_resume_scanning);
+        clearKeepScreenOn();
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_PAUSE_REASON, reason);
+            json.put(Constants.LOGGER_EXTRA_DURATION, inactiveTime);
+            LoggerUtil.log(Constants.LOGGER_ACTION_SCANNER_PAUSED, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void resumeScanning() {
+        isScanningPaused = false;
+        restoreKeepScreenOn();
+        promptChip.setText(R.string.prompt_point_at_a_barcode);
+        startCameraPreview();
+
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_DURATION, SystemClock.elapsedRealtime() - pauseTime);
+            LoggerUtil.log(Constants.LOGGER_ACTION_SCANNER_RESUMED, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Lets the screen turn off while scanning is paused, if the hosting activity keeps it on.
+     */
+    private void clearKeepScreenOn() {
+        if (getActivity() == null) {
+            return;
+        }
+        Window window = getActivity().getWindow();
+        if ((window.getAttributes().flags & WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON) != 0) {
+            window.clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+            isKeepScreenOnCleared = true;
+        }
+    }
+
+    private void restoreKeepScreenOn() {
+        if (isKeepScreenOnCleared && getActivity() != null) {
+            getActivity().getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+            isKeepScreenOnCleared = false;
+        }
+    }
+
+    /**
+     * Dumps the frames of this scan to the app's external files directory if frame recording is
+     * enabled for this build (see {@link BuildConfig#RECORD_SCAN_FRAMES}).
+     */
+    private void startFrameRecording() {
+        if (!BuildConfig.RECORD_SCAN_FRAMES || frameRecorder != null || getContext() == null) {
+            return;
+        }
+        File directory = getContext().getExternalFilesDir(FRAME_RECORDING_DIR_NAME);
+        if (directory == null) {
+            Log.e(TAG, "Frame recording directory is not available!");
+            return;
+        }
+        File file = new File(directory, "scan_" + System.currentTimeMillis() + ".frames");
+        frameRecorder = new FrameRecorder(file, MAX_RECORDED_FRAMES);
+        cameraSource.setFrameRecorder(frameRecorder);
+    }
+
+    private void stopFrameRecording() {
+        if (frameRecorder != null) {
+            if (cameraSource != null) {
+                cameraSource.setFrameRecorder(null);
+            }
+            frameRecorder.close();
+            frameRecorder = null;
         }
     }
 
@@ -160,8 +306,24 @@ public abstract class BarcodeFragment extends Fragment implements View.OnClickLi
                 });
 
         workflowModel.detectedBarcode.observe(getViewLifecycleOwner(), this);
+        workflowModel.rejectedBarcode.observe(
+                getViewLifecycleOwner(),
+                rejection -> {
+                    if (rejection != null) {
+                        // Handled once, a new view lifecycle must not replay the rejection
+                        workflowModel.rejectedBarcode.setValue(null);
+                        onBarcodeRejected(rejection);
+                    }
+                });
     }
 
+    /**
+     * Called when a barcode was read reliably, but rejected by the validator of the frame
+     * processor. Scanning continues, so implementations should give feedback without blocking
+     * the camera preview.
+     */
+    protected abstract void onBarcodeRejected(BarcodeRejection rejection);
+
 
     protected abstract void showInvalidBarcodeDialog();
 
@@ -27,6 +27,9 @@ import de.fau.cs.mad.carwatch.alarmmanager.TimerHandler;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeChecker;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeField;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeProcessor;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeRejection;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeValidator;
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
 import de.fau.cs.mad.carwatch.db.Alarm;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.ui.MainActivity;
@@ -43,16 +46,18 @@ public class Ean8Fragment extends BarcodeFragment {
     @Override
     public void onResume() {
         super.onResume();
-        cameraSource.setFrameProcessor(new BarcodeProcessor(graphicOverlay, workflowModel, Barcode.FORMAT_EAN_8));
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
+        BarcodeValidator validator = barcode -> BarcodeChecker.isValidBarcode(barcode.getRawValue(), sharedPreferences);
+        cameraSource.setFrameProcessor(new BarcodeProcessor(graphicOverlay, workflowModel, Barcode.FORMAT_EAN_8, validator));
         workflowModel.setWorkflowState(WorkflowState.DETECTING);
     }
 
     @Override
-    public void onChanged(Barcode mlKitBarcode) {
-        if (mlKitBarcode != null) {
+    public void onChanged(DetectedBarcode detectedBarcode) {
+        if (detectedBarcode != null) {
             SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
 
-            BarcodeField barcode = new BarcodeField(Constants.BARCODE_TYPE_EAN8, mlKitBarcode.getRawValue());
+            BarcodeField barcode = new BarcodeField(Constants.BARCODE_TYPE_EAN8, detectedBarcode.getRawValue());
             Set<String> scannedBarcodes = sharedPreferences.getStringSet(Constants.PREF_SCANNED_BARCODES, new ArraySet<>());
 
             Log.d(TAG, "Detected Barcode: " + barcode.getValue());
@@ -64,14 +69,7 @@ public class Ean8Fragment extends BarcodeFragment {
 
             switch (check) {
                 case DUPLICATE_BARCODE:
-                    try {
-                        JSONObject json = new JSONObject();
-                        json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcode.getValue());
-                        json.put(Constants.LOGGER_EXTRA_OTHER_BARCODES, scannedBarcodes);
-                        LoggerUtil.log(Constants.LOGGER_ACTION_DUPLICATE_BARCODE_SCANNED, json);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
+                    logDuplicateBarcode(barcode.getValue(), scannedBarcodes);
                     showBarcodeAlreadyScannedDialog();
                     break;
                 case VALID:
@@ -82,19 +80,49 @@ public class Ean8Fragment extends BarcodeFragment {
                     finishScanningProcess();
                     break;
                 case INVALID:
-                    try {
-                        JSONObject json = new JSONObject();
-                        json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcode.getValue());
-                        LoggerUtil.log(Constants.LOGGER_ACTION_INVALID_BARCODE_SCANNED, json);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
+                    logInvalidBarcode(barcode.getValue());
                     showInvalidBarcodeDialog();
                     break;
             }
         }
     }
 
+    @Override
+    protected void onBarcodeRejected(BarcodeRejection rejection) {
+        switch (rejection.getReason()) {
+            case DUPLICATE_BARCODE:
+                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
+                logDuplicateBarcode(rejection.getValue(), sharedPreferences.getStringSet(Constants.PREF_SCANNED_BARCODES, new ArraySet<>()));
+                promptChip.setText(R.string.title_barcode_already_scanned);
+                break;
+            case INVALID:
+                logInvalidBarcode(rejection.getValue());
+                promptChip.setText(R.string.title_barcode_invalid);
+                break;
+        }
+    }
+
+    private void logDuplicateBarcode(String barcodeValue, Set<String> scannedBarcodes) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcodeValue);
+            json.put(Constants.LOGGER_EXTRA_OTHER_BARCODES, scannedBarcodes);
+            LoggerUtil.log(Constants.LOGGER_ACTION_DUPLICATE_BARCODE_SCANNED, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void logInvalidBarcode(String barcodeValue) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcodeValue);
+            LoggerUtil.log(Constants.LOGGER_ACTION_INVALID_BARCODE_SCANNED, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     public void setAlarmId(int alarmId) {
         this.alarmId = alarmId;
     }
@@ -23,6 +23,9 @@ import de.fau.cs.mad.carwatch.R;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeChecker;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeField;
 import de.fau.cs.mad.carwatch.barcodedetection.BarcodeProcessor;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeRejection;
+import de.fau.cs.mad.carwatch.barcodedetection.BarcodeValidator;
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
 import de.fau.cs.mad.carwatch.barcodedetection.QrCodeParser;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.ui.onboarding.steps.WelcomeSlide;
@@ -47,7 +50,8 @@ public class QrFragment extends BarcodeFragment implements WelcomeSlide {
     @Override
     public void onResume() {
         super.onResume();
-        cameraSource.setFrameProcessor(new BarcodeProcessor(graphicOverlay, workflowModel, Barcode.FORMAT_QR_CODE));
+        BarcodeValidator validator = barcode -> BarcodeChecker.isValidQrCode(new QrCodeParser(barcode.getRawValue()));
+        cameraSource.setFrameProcessor(new BarcodeProcessor(graphicOverlay, workflowModel, Barcode.FORMAT_QR_CODE, validator));
         workflowModel.setWorkflowState(WorkflowState.DETECTING);
     }
 
@@ -77,9 +81,9 @@ public class QrFragment extends BarcodeFragment implements WelcomeSlide {
     }
 
     @Override
-    public void onChanged(Barcode mlKitBarcode) {
-        if (mlKitBarcode != null) {
-            BarcodeField barcode = new BarcodeField(Constants.BARCODE_TYPE_QR, mlKitBarcode.getRawValue());
+    public void onChanged(DetectedBarcode detectedBarcode) {
+        if (detectedBarcode != null) {
+            BarcodeField barcode = new BarcodeField(Constants.BARCODE_TYPE_QR, detectedBarcode.getRawValue());
 
             Log.d(TAG, "Detected QR-Code: " + barcode.getValue());
 
@@ -95,19 +99,29 @@ public class QrFragment extends BarcodeFragment implements WelcomeSlide {
                     canShowNextSlide.notifyChange();
                     break;
                 case INVALID:
-                    try {
-                        JSONObject json = new JSONObject();
-                        json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, barcode.getValue());
-                        LoggerUtil.log(Constants.LOGGER_ACTION_INVALID_BARCODE_SCANNED, json);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
+                    logInvalidQrCode(barcode.getValue());
                     showInvalidBarcodeDialog();
                     break;
             }
         }
     }
 
+    @Override
+    protected void onBarcodeRejected(BarcodeRejection rejection) {
+        logInvalidQrCode(rejection.getValue());
+        promptChip.setText(R.string.title_qr_code_invalid);
+    }
+
+    private void logInvalidQrCode(String qrCodeValue) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put(Constants.LOGGER_EXTRA_BARCODE_VALUE, qrCodeValue);
+            LoggerUtil.log(Constants.LOGGER_ACTION_INVALID_BARCODE_SCANNED, json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected void showInvalidBarcodeDialog() {
         if (getContext() == null) {
@@ -147,6 +161,7 @@ public class QrFragment extends BarcodeFragment implements WelcomeSlide {
                 .putBoolean(Constants.PREF_CHECK_DUPLICATES, parser.isCheckDuplicatesEnabled())
                 .putBoolean(Constants.PREF_FIRST_RUN_QR, false)
                 .putString(Constants.PREF_START_SAMPLE, parser.getStartSample())
+                .putLong(Constants.PREF_ALARM_ESCALATION_DURATION, parser.getAlarmEscalationDuration())
                 .apply();
 
         String participantId = parser.getParticipantId();
@@ -58,19 +58,10 @@ public class BootService extends JobIntentService implements Observer<List<Alarm
 
     @Override
     public void onChanged(List<Alarm> alarms) {
-        // reschedule all active alarms
+        // (re-)register active alarms the AlarmManager does not know yet, e.g., after a reboot
         if (alarms == null)
             return;
 
-        for (Alarm alarm : alarms) {
-            if (!alarm.isActive())
-                continue;
-
-            if (alarm.getId() == Constants.EXTRA_ALARM_ID_INITIAL) {
-                AlarmHandler.scheduleWakeUpAlarm(this, alarm);
-            } else {
-                AlarmHandler.scheduleSalivaAlarm(this, alarm, null);
-            }
-        }
+        AlarmHandler.reconcileAlarms(this, alarms);
     }
 }
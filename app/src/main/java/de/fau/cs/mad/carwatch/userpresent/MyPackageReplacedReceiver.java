@@ -7,9 +7,11 @@ import android.util.Log;
 
 import de.fau.cs.mad.carwatch.BuildConfig;
 import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.barcodedetection.camera.CameraConfigCache;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.logger.MetadataLogger;
 import de.fau.cs.mad.carwatch.ui.MainActivity;
+import de.fau.cs.mad.carwatch.util.NotificationChannels;
 
 /**
  * Receiver for the MY_PACKAGE_REPLACED intent, which is sent after an app update.
@@ -26,6 +28,9 @@ public class MyPackageReplacedReceiver extends BroadcastReceiver {
         Log.d(TAG, "App update to version " + BuildConfig.VERSION_NAME + " completed");
         LoggerUtil.log(Constants.LOGGER_APP_UPDATE_COMPLETE, "");
         MetadataLogger.logAppMetadata();
+        // camera capabilities may be reported differently by the new version
+        CameraConfigCache.invalidate(context);
+        NotificationChannels.createAll(context);
         BootService.enqueueWork(context);
     }
 }
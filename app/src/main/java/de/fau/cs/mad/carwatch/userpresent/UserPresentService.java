@@ -1,8 +1,6 @@
 package de.fau.cs.mad.carwatch.userpresent;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
@@ -20,6 +18,7 @@ import de.fau.cs.mad.carwatch.Constants;
 import de.fau.cs.mad.carwatch.R;
 import de.fau.cs.mad.carwatch.logger.LoggerUtil;
 import de.fau.cs.mad.carwatch.ui.MainActivity;
+import de.fau.cs.mad.carwatch.util.NotificationChannels;
 
 public class UserPresentService extends Service {
 
@@ -27,7 +26,6 @@ public class UserPresentService extends Service {
 
 
     private static final int NOTIFICATION_ID = 1994;
-    private static final String CHANNEL_ID = TAG + "Channel";
 
     public static boolean serviceRunning = false;
     public static boolean receiverRegistered = false;
@@ -42,8 +40,6 @@ public class UserPresentService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        // Notification channel
-        createNotificationChannel();
         Notification notification = createNotification();
         startForeground(NOTIFICATION_ID, notification);
         serviceRunning = true;
@@ -101,9 +97,8 @@ public class UserPresentService extends Service {
         }
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, pendingFlags);
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+        NotificationCompat.Builder builder = NotificationChannels.newBuilder(this, NotificationChannels.CHANNEL_USER_PRESENT)
                 .setSmallIcon(R.drawable.ic_bedtime_24dp)
-                .setContentTitle(getString(R.string.app_name))
                 .setContentText(getString(R.string.app_active))
                 .setPriority(NotificationCompat.PRIORITY_DEFAULT)
                 .setShowWhen(false)
@@ -112,18 +107,5 @@ public class UserPresentService extends Service {
         return builder.build();
     }
 
-    private void createNotificationChannel() {
-        // creates notification channel (only API 26+ because notification channel class is new and not in support library)
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-            if (notificationManager != null) {
-                NotificationChannel channel = new NotificationChannel(CHANNEL_ID, TAG, NotificationManager.IMPORTANCE_LOW);
-                channel.enableLights(false);
-                channel.enableVibration(false);
-                notificationManager.createNotificationChannel(channel); // register notification channel
-            }
-        }
-    }
-
 
 }
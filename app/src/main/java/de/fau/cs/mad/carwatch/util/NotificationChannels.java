@@ -0,0 +1,130 @@
+package de.fau.cs.mad.carwatch.util;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+import androidx.core.app.NotificationCompat;
+import androidx.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.BuildConfig;
+import de.fau.cs.mad.carwatch.Constants;
+import de.fau.cs.mad.carwatch.R;
+
+/**
+ * Registry of all notification channels of the app.
+ *
+ * <p>Notification channels are persisted by the system, so they are created in one call when the
+ * app is started or updated instead of on every alarm or timer. The ids are the ones the channels
+ * were created with by earlier versions, so that the user's channel settings are kept.
+ */
+public final class NotificationChannels {
+
+    private static final String TAG = NotificationChannels.class.getSimpleName();
+
+    public static final String CHANNEL_ALARM = "AlarmReceiverChannel";
+    // Created by earlier versions, but never posted to: the ringing timer notification has always
+    // used the countdown channel. Still created so that the channel list does not change.
+    private static final String CHANNEL_TIMER_ALARM = "TimerReceiverChannel";
+    // Countdown and ringing timer notifications
+    public static final String CHANNEL_TIMER_COUNTDOWN = "TimerHandlerChannel";
+    public static final String CHANNEL_USER_PRESENT = "UserPresentServiceChannel";
+
+    private static boolean channelsCreated = false;
+
+    private NotificationChannels() {
+    }
+
+    /**
+     * Creates the channels if they have not been created by this version of the app yet. Cheap
+     * enough to be called before every notification.
+     */
+    public static synchronized void ensureCreated(Context context) {
+        if (channelsCreated)
+            return;
+
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        if (sp.getInt(Constants.PREF_NOTIFICATION_CHANNELS_VERSION, -1) == BuildConfig.VERSION_CODE) {
+            channelsCreated = true;
+            return;
+        }
+        createAll(context);
+    }
+
+    /**
+     * (Re-)creates all channels, e.g., after an app update.
+     */
+    public static synchronized void createAll(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (notificationManager == null) {
+                Log.e(TAG, "Could not create notification channels: notificationManager is null");
+                return;
+            }
+
+            List<NotificationChannel> channels = new ArrayList<>();
+            channels.add(newRingingChannel(CHANNEL_ALARM, "AlarmReceiver"));
+            channels.add(newRingingChannel(CHANNEL_TIMER_ALARM, "TimerReceiver"));
+            channels.add(newRingingChannel(CHANNEL_TIMER_COUNTDOWN, "TimerHandler"));
+
+            NotificationChannel userPresentChannel = new NotificationChannel(CHANNEL_USER_PRESENT, "UserPresentService", NotificationManager.IMPORTANCE_LOW);
+            userPresentChannel.enableLights(false);
+            userPresentChannel.enableVibration(false);
+            channels.add(userPresentChannel);
+
+            notificationManager.createNotificationChannels(channels);
+        }
+
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putInt(Constants.PREF_NOTIFICATION_CHANNELS_VERSION, BuildConfig.VERSION_CODE)
+                .apply();
+        channelsCreated = true;
+    }
+
+    /**
+     * Creates a channel for ringing alarms and timers. The sound and vibration are played by
+     * AlarmSoundControl, which starts them gently, so the channel is silent. The system only applies
+     * this when the channel is created; channels that already exist keep their sound settings.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private static NotificationChannel newRingingChannel(String id, String name) {
+        NotificationChannel channel = new NotificationChannel(id, name, NotificationManager.IMPORTANCE_MAX);
+        channel.setSound(null, null);
+        channel.enableVibration(false);
+        return channel;
+    }
+
+    /**
+     * Returns a new builder with the settings shared by all ringing alarm and timer notifications.
+     * The notifications are silent, as the alarm sound and vibration are played by
+     * AlarmSoundControl.
+     */
+    public static NotificationCompat.Builder newAlarmBuilder(Context context, String channelId) {
+        return newBuilder(context, channelId)
+                .setDefaults(Notification.DEFAULT_LIGHTS)
+                .setSound(null)
+                .setVibrate(null)
+                .setWhen(System.currentTimeMillis())
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setOngoing(true)
+                .setSmallIcon(R.drawable.ic_alarm_white_24dp);
+    }
+
+    /**
+     * Returns a new builder for the given channel with the app name as title.
+     */
+    public static NotificationCompat.Builder newBuilder(Context context, String channelId) {
+        ensureCreated(context);
+        return new NotificationCompat.Builder(context, channelId)
+                .setContentTitle(context.getString(R.string.app_name));
+    }
+}
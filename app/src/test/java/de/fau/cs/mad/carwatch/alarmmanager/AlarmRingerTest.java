@@ -0,0 +1,285 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlarmRingerTest {
+
+    private static final long DURATION = 60_000;
+    private static final long INTERVAL = DURATION / Constants.ALARM_ESCALATION_NUM_STEPS;
+
+    private final FakeQueue queue = new FakeQueue();
+    private final List<String> events = new ArrayList<>();
+    private final List<Integer> steps = new ArrayList<>();
+    private final List<Boolean> rerings = new ArrayList<>();
+    private final AlarmRinger ringer = new AlarmRinger(queue, queue::now,
+            (alarmId, step, volume, amplitude, playingTime, rering) -> {
+                steps.add(step);
+                rerings.add(rering);
+            });
+
+    @Test
+    public void commandsRunInPostingOrder() throws Exception {
+        Future<Long> play1 = ringer.play(1, DURATION, new FakeOutput(1));
+        Future<Void> stop = ringer.stop();
+        Future<Long> play2 = ringer.play(2, DURATION, new FakeOutput(2));
+        // nothing runs on the calling thread
+        assertFalse(play1.isDone());
+        assertTrue(events.isEmpty());
+
+        queue.advance(0);
+        assertEquals(Arrays.asList("start 1", "stop 1", "start 2"), events);
+        assertTrue(play1.isDone());
+        assertTrue(stop.isDone());
+        assertEquals(0, (long) play2.get());
+    }
+
+    @Test
+    public void playStopsRingingAlarmBeforeStartingNext() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(INTERVAL);
+        ringer.play(2, DURATION, new FakeOutput(2));
+        queue.advance(0);
+        assertEquals(Arrays.asList("start 1", "level 1", "stop 1", "start 2"), events);
+        // the other alarm starts quietly
+        assertEquals(0, (int) last(steps));
+    }
+
+    @Test
+    public void replacingItselfWhileRingingKeepsStep() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(2 * INTERVAL);
+        assertEquals(2, (int) last(steps));
+
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(0);
+        assertEquals(2, (int) last(steps));
+        // the escalation of the replaced alarm was cancelled, only the new one continues
+        steps.clear();
+        queue.advance(INTERVAL);
+        assertEquals(Arrays.asList(3), steps);
+    }
+
+    @Test
+    public void escalatesOneStepPerInterval() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(10 * DURATION);
+        List<Integer> expected = new ArrayList<>();
+        for (int step = 0; step <= Constants.ALARM_ESCALATION_NUM_STEPS; step++) {
+            expected.add(step);
+        }
+        assertEquals(expected, steps);
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void stopCancelsEscalation() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(INTERVAL);
+        ringer.stop();
+        queue.advance(10 * DURATION);
+        assertEquals(Arrays.asList(0, 1), steps);
+        assertEquals(Arrays.asList("start 1", "level 1", "stop 1"), events);
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void stopWithoutRingingAlarmCompletes() throws ExecutionException, InterruptedException {
+        Future<Void> stop = ringer.stop();
+        queue.advance(0);
+        assertTrue(stop.isDone());
+        stop.get();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void reportsWhetherSoundIsPlaying() throws Exception {
+        FakeOutput silent = new FakeOutput(1);
+        silent.playing = false;
+        Future<Long> play = ringer.play(1, DURATION, silent);
+        queue.advance(0);
+        assertEquals(-1, (long) play.get());
+    }
+
+    @Test
+    public void reringWithinWindowContinuesAtStep() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(3 * INTERVAL);
+        ringer.stop();
+        queue.advance(Constants.ALARM_RERING_WINDOW - 1);
+
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(0);
+        assertEquals(3, (int) last(steps));
+        assertTrue(last(rerings));
+    }
+
+    @Test
+    public void reringAfterWindowStartsQuietly() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(3 * INTERVAL);
+        ringer.stop();
+        queue.advance(Constants.ALARM_RERING_WINDOW);
+
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(0);
+        assertEquals(0, (int) last(steps));
+        assertFalse(last(rerings));
+    }
+
+    @Test
+    public void otherAlarmAfterStopStartsQuietly() {
+        ringer.play(1, DURATION, new FakeOutput(1));
+        queue.advance(3 * INTERVAL);
+        ringer.stop();
+        ringer.play(2, DURATION, new FakeOutput(2));
+        queue.advance(0);
+        assertEquals(0, (int) last(steps));
+        assertFalse(last(rerings));
+    }
+
+    @Test
+    public void zeroDurationRingsAtFullVolumeRightAway() {
+        FakeOutput output = new FakeOutput(1);
+        ringer.play(1, 0, output);
+        queue.advance(0);
+        assertEquals(Arrays.asList(Constants.ALARM_ESCALATION_NUM_STEPS), steps);
+        assertEquals(1f, output.startVolume, 1e-6f);
+        assertEquals(255, output.startAmplitude);
+        // full volume right away is not a rering
+        assertFalse(last(rerings));
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void levelRisesFromStartToFull() {
+        assertEquals(Constants.ALARM_ESCALATION_START_VOLUME, AlarmRinger.getVolume(0), 1e-6f);
+        assertEquals(1f, AlarmRinger.getVolume(Constants.ALARM_ESCALATION_NUM_STEPS), 1e-6f);
+        assertEquals(Constants.ALARM_ESCALATION_START_AMPLITUDE, AlarmRinger.getAmplitude(0));
+        assertEquals(255, AlarmRinger.getAmplitude(Constants.ALARM_ESCALATION_NUM_STEPS));
+        for (int step = 1; step <= Constants.ALARM_ESCALATION_NUM_STEPS; step++) {
+            assertTrue(AlarmRinger.getVolume(step) > AlarmRinger.getVolume(step - 1));
+            assertTrue(AlarmRinger.getAmplitude(step) > AlarmRinger.getAmplitude(step - 1));
+        }
+    }
+
+    private static <T> T last(List<T> list) {
+        return list.get(list.size() - 1);
+    }
+
+    private class FakeOutput implements AlarmRinger.Output {
+
+        private final int alarmId;
+        boolean playing = true;
+        float startVolume;
+        int startAmplitude;
+
+        FakeOutput(int alarmId) {
+            this.alarmId = alarmId;
+        }
+
+        @Override
+        public boolean start(float volume, int amplitude) {
+            events.add("start " + alarmId);
+            startVolume = volume;
+            startAmplitude = amplitude;
+            return playing;
+        }
+
+        @Override
+        public void setLevel(float volume, int amplitude) {
+            events.add("level " + alarmId);
+        }
+
+        @Override
+        public void stop() {
+            events.add("stop " + alarmId);
+        }
+    }
+
+    /**
+     * Runs the posted commands in the order of their due time, and in posting order if due at the
+     * same time, like a Handler. Time only passes in {@link #advance(long)}.
+     */
+    static class FakeQueue implements AlarmRinger.CommandQueue {
+
+        private static class Entry {
+            final long dueTime;
+            final long seq;
+            final Runnable command;
+
+            Entry(long dueTime, long seq, Runnable command) {
+                this.dueTime = dueTime;
+                this.seq = seq;
+                this.command = command;
+            }
+        }
+
+        private final List<Entry> entries = new ArrayList<>();
+        private long now = 0;
+        private long seq = 0;
+
+        long now() {
+            return now;
+        }
+
+        @Override
+        public void post(Runnable command) {
+            postDelayed(command, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable command, long delayMillis) {
+            entries.add(new Entry(now + delayMillis, seq++, command));
+        }
+
+        @Override
+        public void removeCallbacks(Runnable command) {
+            Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().command == command) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        boolean isIdle() {
+            return entries.isEmpty();
+        }
+
+        /**
+         * Runs all commands that are due within the given time, including the ones they post.
+         */
+        void advance(long millis) {
+            long target = now + millis;
+            while (true) {
+                Entry next = null;
+                for (Entry entry : entries) {
+                    if (entry.dueTime <= target && (next == null || entry.dueTime < next.dueTime
+                            || (entry.dueTime == next.dueTime && entry.seq < next.seq))) {
+                        next = entry;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                entries.remove(next);
+                now = next.dueTime;
+                next.command.run();
+            }
+            now = target;
+        }
+    }
+}
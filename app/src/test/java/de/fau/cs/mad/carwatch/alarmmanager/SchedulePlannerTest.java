@@ -0,0 +1,114 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Minutes;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plans study days in Europe/Berlin, which switches to summer time on 2026-03-29 (02:00 -> 03:00)
+ * and back on 2026-10-25 (03:00 -> 02:00).
+ */
+public class SchedulePlannerTest {
+
+    private static final DateTimeZone BERLIN = DateTimeZone.forID("Europe/Berlin");
+
+    @Test
+    public void numbersAlarmsAndSamples() {
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("30,30", "1200").plan(at(2026, 6, 10, 7, 0, 2));
+        assertEquals(3, plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            assertEquals(SchedulePlanner.FIRST_SALIVA_ALARM_ID + i, plan.get(i).alarmId);
+            assertEquals(i, plan.get(i).salivaId);
+        }
+        assertFalse(plan.get(0).isFixed);
+        assertFalse(plan.get(1).isFixed);
+        assertTrue(plan.get(2).isFixed);
+    }
+
+    @Test
+    public void firstSampleAtWakeUpIsNotPlanned() {
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("0,30,30", "").plan(at(2026, 6, 10, 7, 0, 2));
+        assertEquals(2, plan.size());
+        // saliva id 0 is taken with the wake-up alarm
+        assertEquals(1, plan.get(0).salivaId);
+        assertEquals(at(2026, 6, 10, 7, 30, 2), plan.get(0).time);
+    }
+
+    @Test
+    public void relativeAlarmsRollOverMidnight() {
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("30,45", "").plan(at(2026, 6, 10, 23, 30, 2));
+        assertEquals(at(2026, 6, 11, 0, 0, 2), plan.get(0).time);
+        assertEquals(at(2026, 6, 11, 0, 45, 2), plan.get(1).time);
+    }
+
+    @Test
+    public void fixedAlarmsStayOnDayOfWakeUp() {
+        DateTime lateWakeUp = at(2026, 6, 10, 23, 30, 2);
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("", "0800,2345").plan(lateWakeUp);
+        // the fixed times are not moved to the next day, even if they have already passed
+        assertEquals(at(2026, 6, 10, 8, 0, 2), plan.get(0).time);
+        assertEquals(at(2026, 6, 10, 23, 45, 2), plan.get(1).time);
+    }
+
+    @Test
+    public void relativeAlarmsKeepDistanceAcrossSpringForward() {
+        DateTime wakeUp = at(2026, 3, 29, 1, 30, 1);
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("30,30", "").plan(wakeUp);
+        // 02:00 does not exist, 30 minutes after 01:30 is 03:00 summer time
+        assertEquals(at(2026, 3, 29, 3, 0, 2), plan.get(0).time);
+        assertEquals(at(2026, 3, 29, 3, 30, 2), plan.get(1).time);
+        assertEquals(60, Minutes.minutesBetween(wakeUp, plan.get(1).time).getMinutes());
+    }
+
+    @Test
+    public void fixedAlarmInSpringForwardGapIsMovedForward() {
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("", "0230,0300").plan(at(2026, 3, 29, 1, 0, 1));
+        assertEquals(at(2026, 3, 29, 3, 30, 2), plan.get(0).time);
+        assertEquals(at(2026, 3, 29, 3, 0, 2), plan.get(1).time);
+    }
+
+    @Test
+    public void relativeAlarmsKeepDistanceAcrossFallBack() {
+        DateTime wakeUp = at(2026, 10, 25, 1, 30, 2);
+        List<SchedulePlanner.PlannedAlarm> plan = new SchedulePlanner("60,60", "").plan(wakeUp);
+        // 02:30 occurs twice, once in summer and once in winter time
+        assertEquals(at(2026, 10, 25, 2, 30, 2), plan.get(0).time);
+        assertEquals(at(2026, 10, 25, 2, 30, 1), plan.get(1).time);
+        assertEquals(120, Minutes.minutesBetween(wakeUp, plan.get(1).time).getMinutes());
+    }
+
+    @Test
+    public void fixedAlarmInFallBackOverlapKeepsOffsetOfWakeUp() {
+        SchedulePlanner planner = new SchedulePlanner("", "0230");
+        assertEquals(at(2026, 10, 25, 2, 30, 2), planner.plan(at(2026, 10, 25, 0, 30, 2)).get(0).time);
+        assertEquals(at(2026, 10, 25, 2, 30, 1), planner.plan(at(2026, 10, 25, 2, 15, 1)).get(0).time);
+        assertEquals(at(2026, 10, 25, 2, 30, 1), planner.plan(at(2026, 10, 25, 9, 0, 1)).get(0).time);
+    }
+
+    @Test
+    public void planIsDeterministic() {
+        SchedulePlanner planner = new SchedulePlanner("0,30,60", "1200,1800");
+        DateTime wakeUp = at(2026, 6, 10, 7, 0, 2);
+        List<SchedulePlanner.PlannedAlarm> first = planner.plan(wakeUp);
+        List<SchedulePlanner.PlannedAlarm> second = planner.plan(wakeUp);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).time, second.get(i).time);
+        }
+    }
+
+    /**
+     * Returns the time with the given UTC offset (in hours), in Europe/Berlin. The offset selects
+     * the occurrence of a time that exists twice.
+     */
+    private static DateTime at(int year, int month, int day, int hour, int minute, int offsetHours) {
+        return new DateTime(year, month, day, hour, minute, DateTimeZone.forOffsetHours(offsetHours)).withZone(BERLIN);
+    }
+}
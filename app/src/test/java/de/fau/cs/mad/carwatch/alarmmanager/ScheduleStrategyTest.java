@@ -0,0 +1,48 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import android.os.Build;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ScheduleStrategyTest {
+
+    @Test
+    public void alarmsUseAlarmClockIfExactAlarmsAreAllowed() {
+        assertEquals(ScheduleStrategy.ALARM_CLOCK, ScheduleStrategy.forAlarm(true));
+        assertEquals(ScheduleStrategy.INEXACT_ALLOW_WHILE_IDLE, ScheduleStrategy.forAlarm(false));
+    }
+
+    @Test
+    public void timersFireExactlyWhileIdleSinceMarshmallow() {
+        assertEquals(ScheduleStrategy.EXACT, ScheduleStrategy.forTimer(Build.VERSION_CODES.M - 1, true));
+        assertEquals(ScheduleStrategy.EXACT_ALLOW_WHILE_IDLE, ScheduleStrategy.forTimer(Build.VERSION_CODES.M, true));
+        assertEquals(ScheduleStrategy.EXACT_ALLOW_WHILE_IDLE, ScheduleStrategy.forTimer(Build.VERSION_CODES.S, true));
+    }
+
+    @Test
+    public void timersFallBackToInexactWithoutExactAlarmPermission() {
+        assertEquals(ScheduleStrategy.INEXACT_ALLOW_WHILE_IDLE, ScheduleStrategy.forTimer(Build.VERSION_CODES.S, false));
+    }
+
+    @Test
+    public void putsFireDelayAndStrategy() throws Exception {
+        JSONObject json = new JSONObject();
+        ScheduleStrategy.putFireDelay(json, 10_000L, ScheduleStrategy.INEXACT_ALLOW_WHILE_IDLE.name(), 250_000L);
+        assertEquals(240_000L, json.getLong(Constants.LOGGER_EXTRA_FIRE_DELAY));
+        assertEquals("INEXACT_ALLOW_WHILE_IDLE", json.getString(Constants.LOGGER_EXTRA_SCHEDULE_STRATEGY));
+    }
+
+    @Test
+    public void putsNothingWithoutPlannedTime() throws Exception {
+        JSONObject json = new JSONObject();
+        ScheduleStrategy.putFireDelay(json, null, null, 250_000L);
+        assertFalse(json.has(Constants.LOGGER_EXTRA_FIRE_DELAY));
+        assertFalse(json.has(Constants.LOGGER_EXTRA_SCHEDULE_STRATEGY));
+    }
+}
@@ -0,0 +1,76 @@
+package de.fau.cs.mad.carwatch.alarmmanager;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import de.fau.cs.mad.carwatch.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WakeLockStatsTest {
+
+    private static final LocalDate MONDAY = new LocalDate(2024, 3, 4);
+    private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+
+    private final InMemorySharedPreferences sp = new InMemorySharedPreferences();
+
+    @Test
+    public void firstSectionStartsTotalsOfToday() {
+        assertNull(WakeLockStats.record(sp, MONDAY, 300, false));
+        assertEquals(MONDAY.toString(), sp.getString(Constants.PREF_WAKE_LOCK_DAY, null));
+        assertTotals(300, 300, 1, 0);
+    }
+
+    @Test
+    public void sectionsOfSameDayAddUp() {
+        WakeLockStats.record(sp, MONDAY, 300, false);
+        WakeLockStats.record(sp, MONDAY, 1200, true);
+        assertNull(WakeLockStats.record(sp, MONDAY, 500, false));
+        assertTotals(2000, 1200, 3, 1);
+    }
+
+    @Test
+    public void firstSectionOfNextDayReturnsSummaryAndResetsTotals() {
+        WakeLockStats.record(sp, MONDAY, 300, false);
+        WakeLockStats.record(sp, MONDAY, 1200, true);
+
+        WakeLockStats.Summary summary = WakeLockStats.record(sp, TUESDAY, 100, false);
+        assertNotNull(summary);
+        assertEquals(MONDAY.toString(), summary.day);
+        assertEquals(1500, summary.totalTime);
+        assertEquals(1200, summary.maxTime);
+        assertEquals(2, summary.numSections);
+        assertEquals(1, summary.numTimeouts);
+
+        assertEquals(TUESDAY.toString(), sp.getString(Constants.PREF_WAKE_LOCK_DAY, null));
+        assertTotals(100, 100, 1, 0);
+        // the summary is only returned once
+        assertNull(WakeLockStats.record(sp, TUESDAY, 100, false));
+    }
+
+    @Test
+    public void daysWithoutSectionsAreSkipped() {
+        WakeLockStats.record(sp, MONDAY, 300, false);
+        WakeLockStats.Summary summary = WakeLockStats.record(sp, MONDAY.plusDays(5), 100, true);
+        assertNotNull(summary);
+        assertEquals(MONDAY.toString(), summary.day);
+        assertTotals(100, 100, 1, 1);
+    }
+
+    @Test
+    public void timedOutSectionCountsTimeoutOnly() {
+        assertEquals(5000, WakeLockStats.getHeldTime(8000, 5000, true));
+        assertEquals(3000, WakeLockStats.getHeldTime(3000, 5000, true));
+        // a lock that was still held was released by the section itself
+        assertEquals(8000, WakeLockStats.getHeldTime(8000, 5000, false));
+    }
+
+    private void assertTotals(long totalTime, long maxTime, int numSections, int numTimeouts) {
+        assertEquals(totalTime, sp.getLong(Constants.PREF_WAKE_LOCK_TOTAL_TIME, -1));
+        assertEquals(maxTime, sp.getLong(Constants.PREF_WAKE_LOCK_MAX_TIME, -1));
+        assertEquals(numSections, sp.getInt(Constants.PREF_WAKE_LOCK_NUM_SECTIONS, -1));
+        assertEquals(numTimeouts, sp.getInt(Constants.PREF_WAKE_LOCK_NUM_TIMEOUTS, -1));
+    }
+}
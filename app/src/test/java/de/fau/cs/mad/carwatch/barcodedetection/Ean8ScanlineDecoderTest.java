@@ -0,0 +1,131 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.HEIGHT;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.MODULE_WIDTH;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.QUIET_ZONE_MODULES;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.WIDTH;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.blank;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.modules;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.render;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.totalModules;
+import static de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames.withCheckDigit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes synthetic EAN-8 barcodes rendered by {@link Ean8TestFrames}.
+ */
+public class Ean8ScanlineDecoderTest {
+
+    private Ean8ScanlineDecoder decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new Ean8ScanlineDecoder();
+    }
+
+    @Test
+    public void decodesAllDigitsInLeftAndRightHalf() {
+        // every digit appears in both the L-coded and the R-coded half
+        String[] codes = {
+                withCheckDigit("0123456"),
+                withCheckDigit("5678901"),
+                withCheckDigit("2345678"),
+                withCheckDigit("7890123"),
+                withCheckDigit("4567890"),
+                withCheckDigit("9012345")
+        };
+        for (String code : codes) {
+            assertEquals(code, decoder.decode(render(modules(code), false), WIDTH, HEIGHT, 0));
+        }
+    }
+
+    @Test
+    public void acceptsCorrectCheckDigitOnly() {
+        String code = withCheckDigit("9638507");
+        assertEquals("96385074", code);
+        assertEquals(code, decoder.decode(render(modules(code), false), WIDTH, HEIGHT, 0));
+
+        for (int wrongCheckDigit = 0; wrongCheckDigit < 10; wrongCheckDigit++) {
+            String wrongCode = "9638507" + wrongCheckDigit;
+            if (!wrongCode.equals(code)) {
+                assertNull(wrongCode, decoder.decode(render(modules(wrongCode), false), WIDTH, HEIGHT, 0));
+            }
+        }
+    }
+
+    @Test
+    public void decodesReversedScan() {
+        String code = withCheckDigit("1234567");
+        assertEquals(code, decoder.decode(render(modules(code), true), WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void decodesAllRotations() {
+        String code = withCheckDigit("5512345");
+        byte[] upright = render(modules(code), false);
+        int barcodeStart = (WIDTH - totalModules() * MODULE_WIDTH) / 2 + QUIET_ZONE_MODULES * MODULE_WIDTH;
+        int barcodeEnd = barcodeStart + 67 * MODULE_WIDTH;
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            // the camera delivers the frame rotated counter-clockwise by the rotation
+            byte[] sensor = rotateClockwise(upright, WIDTH, HEIGHT, 360 - rotation);
+            boolean portraitSensor = rotation % 180 != 0;
+            int sensorWidth = portraitSensor ? HEIGHT : WIDTH;
+            int sensorHeight = portraitSensor ? WIDTH : HEIGHT;
+
+            assertEquals("rotation " + rotation, code, decoder.decode(sensor, sensorWidth, sensorHeight, rotation));
+
+            int[] bounds = decoder.getBounds();
+            assertEquals("left at rotation " + rotation, barcodeStart, bounds[0], MODULE_WIDTH);
+            assertEquals("right at rotation " + rotation, barcodeEnd, bounds[2], MODULE_WIDTH);
+            assertTrue("top at rotation " + rotation, bounds[1] <= HEIGHT / 2);
+            assertTrue("bottom at rotation " + rotation, bounds[3] >= HEIGHT / 2);
+        }
+    }
+
+    @Test
+    public void rejectsBlankAndLowContrastFrames() {
+        assertNull(decoder.decode(blank(), WIDTH, HEIGHT, 0));
+
+        byte[] lowContrast = render(modules(withCheckDigit("1234567")), false);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            lowContrast[i] = (byte) (100 + (lowContrast[i] & 0xFF) / 16);
+        }
+        assertNull(decoder.decode(lowContrast, WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void rejectsBarcodeWithoutQuietZone() {
+        String code = withCheckDigit("1234567");
+        boolean[] modules = modules(code);
+        // bar right before the start guard
+        modules[QUIET_ZONE_MODULES - 1] = true;
+        assertNull(decoder.decode(render(modules, false), WIDTH, HEIGHT, 0));
+    }
+
+    /**
+     * Rotates the luma plane of a frame clockwise by the given number of degrees.
+     */
+    private static byte[] rotateClockwise(byte[] nv21, int width, int height, int degrees) {
+        byte[] rotated = nv21;
+        for (int i = 0; i < (degrees / 90) % 4; i++) {
+            byte[] next = new byte[rotated.length];
+            // the rotated frame is height x width
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    next[x * height + (height - 1 - y)] = rotated[y * width + x];
+                }
+            }
+            rotated = next;
+            int tmp = width;
+            width = height;
+            height = tmp;
+        }
+        return rotated;
+    }
+}
@@ -0,0 +1,88 @@
+package de.fau.cs.mad.carwatch.barcodedetection;
+
+/**
+ * Renders synthetic EAN-8 barcodes into the luma plane of upright NV21 frames.
+ */
+public final class Ean8TestFrames {
+
+    public static final int WIDTH = 320;
+    public static final int HEIGHT = 240;
+    public static final int MODULE_WIDTH = 3;
+    public static final int QUIET_ZONE_MODULES = 10;
+    public static final int BAR_HEIGHT = 100;
+    static final byte WHITE = (byte) 200;
+    static final byte BLACK = (byte) 40;
+
+    /**
+     * L-code patterns of the digits 0-9, 1 = bar. R-code patterns are their complement.
+     */
+    private static final String[] L_PATTERNS = {
+            "0001101", "0011001", "0010011", "0111101", "0100011",
+            "0110001", "0101111", "0111011", "0110111", "0001011"
+    };
+
+    private Ean8TestFrames() {
+    }
+
+    public static String withCheckDigit(String digits) {
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += (i % 2 == 0) ? 3 * digit : digit;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    static int totalModules() {
+        return 2 * QUIET_ZONE_MODULES + 67;
+    }
+
+    /**
+     * Returns the modules (true = bar) of the given code including the quiet zones.
+     */
+    public static boolean[] modules(String code) {
+        StringBuilder pattern = new StringBuilder();
+        pattern.append("101");
+        for (int i = 0; i < 4; i++) {
+            pattern.append(L_PATTERNS[code.charAt(i) - '0']);
+        }
+        pattern.append("01010");
+        for (int i = 4; i < 8; i++) {
+            for (char module : L_PATTERNS[code.charAt(i) - '0'].toCharArray()) {
+                pattern.append(module == '1' ? '0' : '1');
+            }
+        }
+        pattern.append("101");
+
+        boolean[] modules = new boolean[totalModules()];
+        for (int i = 0; i < pattern.length(); i++) {
+            modules[QUIET_ZONE_MODULES + i] = pattern.charAt(i) == '1';
+        }
+        return modules;
+    }
+
+    /**
+     * Renders the modules as vertical bars centered in an upright NV21 frame.
+     */
+    public static byte[] render(boolean[] modules, boolean reversed) {
+        byte[] nv21 = blank();
+        int left = (WIDTH - modules.length * MODULE_WIDTH) / 2;
+        int top = (HEIGHT - BAR_HEIGHT) / 2;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int module = (x - left) / MODULE_WIDTH;
+                boolean inBarcode = x >= left && module < modules.length && y >= top && y < top + BAR_HEIGHT;
+                boolean isBar = inBarcode && modules[reversed ? modules.length - 1 - module : module];
+                nv21[y * WIDTH + x] = isBar ? BLACK : WHITE;
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * Returns an all-black NV21 frame.
+     */
+    public static byte[] blank() {
+        return new byte[WIDTH * HEIGHT * 3 / 2];
+    }
+}
@@ -0,0 +1,94 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the latency of handing a frame from the producer to a parked consumer, i.e., the time
+ * between {@link FrameMailbox#offer(Object)} and the consumer receiving the frame.
+ *
+ * <p>The percentiles are printed to stdout; the test only fails if a frame is lost or the consumer
+ * stops responding. It only runs if the {@code carwatch.benchmark} system property is set, e.g.
+ * {@code ./gradlew testDebugUnitTest -Pbenchmark}.
+ */
+public class FrameMailboxBenchmark {
+
+    private static final String BENCHMARK_PROPERTY = "carwatch.benchmark";
+
+    private static final int NUM_WARMUP_FRAMES = 2_000;
+    private static final int NUM_FRAMES = 10_000;
+    // generous, a handoff takes microseconds
+    private static final long HANDOFF_TIMEOUT_MS = 5000;
+
+    @Test
+    public void handoffLatency() throws InterruptedException {
+        assumeTrue("Benchmark skipped, set " + BENCHMARK_PROPERTY + " to run it.",
+                Boolean.getBoolean(BENCHMARK_PROPERTY));
+        AtomicLong consumedFrames = new AtomicLong();
+        long[] latencies = new long[NUM_WARMUP_FRAMES + NUM_FRAMES];
+
+        FrameMailbox<long[]> mailbox = new FrameMailbox<>(frame -> {
+        });
+        mailbox.setActive(true);
+        Thread consumer = new Thread(() -> mailbox.runLoop(frame -> {
+            latencies[(int) frame[0]] = System.nanoTime() - frame[1];
+            consumedFrames.incrementAndGet();
+            return false;
+        }, e -> {
+        }));
+        consumer.start();
+
+        for (int i = 0; i < latencies.length; i++) {
+            waitUntilParked(consumer);
+            mailbox.offer(new long[]{i, System.nanoTime()});
+            // wait for the frame to be consumed, so that every frame measures a wake-up
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HANDOFF_TIMEOUT_MS);
+            while (consumedFrames.get() <= i) {
+                checkDeadline(deadline, "Frame " + i + " was not consumed");
+                Thread.yield();
+            }
+        }
+        mailbox.setActive(false);
+        consumer.join(HANDOFF_TIMEOUT_MS);
+
+        assertEquals(latencies.length, consumedFrames.get());
+        long[] measured = Arrays.copyOfRange(latencies, NUM_WARMUP_FRAMES, latencies.length);
+        Arrays.sort(measured);
+        System.out.printf("FrameMailbox handoff latency over %d frames: p50 %d us, p90 %d us, p99 %d us, max %d us%n",
+                NUM_FRAMES,
+                TimeUnit.NANOSECONDS.toMicros(percentile(measured, 0.5)),
+                TimeUnit.NANOSECONDS.toMicros(percentile(measured, 0.9)),
+                TimeUnit.NANOSECONDS.toMicros(percentile(measured, 0.99)),
+                TimeUnit.NANOSECONDS.toMicros(measured[measured.length - 1]));
+        assertTrue(measured[0] >= 0);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))];
+    }
+
+    private static void waitUntilParked(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HANDOFF_TIMEOUT_MS);
+        while (thread.getState() != Thread.State.WAITING) {
+            if (!thread.isAlive()) {
+                fail("Consumer thread died");
+            }
+            checkDeadline(deadline, "Consumer thread did not park");
+            Thread.yield();
+        }
+    }
+
+    private static void checkDeadline(long deadline, String message) {
+        if (System.nanoTime() - deadline > 0) {
+            fail(message + " within " + HANDOFF_TIMEOUT_MS + " ms");
+        }
+    }
+}
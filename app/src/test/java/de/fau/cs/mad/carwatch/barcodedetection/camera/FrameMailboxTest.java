@@ -0,0 +1,178 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameMailboxTest {
+
+    private List<String> recycled;
+    private FrameMailbox<String> mailbox;
+
+    @Before
+    public void setUp() {
+        recycled = Collections.synchronizedList(new ArrayList<>());
+        mailbox = new FrameMailbox<>(recycled::add);
+    }
+
+    @Test
+    public void offerDropsOldestPendingFrame() {
+        mailbox.setActive(true);
+        mailbox.offer("frame1");
+        mailbox.offer("frame2");
+        mailbox.offer("frame3");
+
+        assertEquals(2, recycled.size());
+        assertEquals("frame1", recycled.get(0));
+        assertEquals("frame2", recycled.get(1));
+        assertEquals("frame3", mailbox.take());
+    }
+
+    @Test
+    public void takeReturnsNullWhenInactive() {
+        mailbox.offer("frame");
+        assertNull(mailbox.take());
+    }
+
+    @Test
+    public void clearRecyclesPendingFrame() {
+        mailbox.offer("frame");
+        mailbox.clear();
+        mailbox.clear();
+
+        assertEquals(Collections.singletonList("frame"), recycled);
+    }
+
+    @Test
+    public void runLoopRecyclesEveryConsumedFrame() throws InterruptedException {
+        List<String> consumed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch consumedTwo = new CountDownLatch(2);
+        mailbox.setActive(true);
+        Thread consumer = new Thread(() -> mailbox.runLoop(frame -> {
+            consumed.add(frame);
+            consumedTwo.countDown();
+            return false;
+        }, e -> {
+        }));
+        consumer.start();
+
+        mailbox.offer("frame1");
+        waitUntilTaken();
+        mailbox.offer("frame2");
+        assertTrue(consumedTwo.await(5, TimeUnit.SECONDS));
+
+        mailbox.setActive(false);
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals(consumed, recycled);
+    }
+
+    @Test
+    public void runLoopDoesNotRecycleFramesTakenOver() throws InterruptedException {
+        CountDownLatch consumedTwo = new CountDownLatch(2);
+        mailbox.setActive(true);
+        Thread consumer = new Thread(() -> mailbox.runLoop(frame -> {
+            consumedTwo.countDown();
+            return frame.equals("kept");
+        }, e -> {
+        }));
+        consumer.start();
+
+        mailbox.offer("kept");
+        waitUntilTaken();
+        mailbox.offer("returned");
+        assertTrue(consumedTwo.await(5, TimeUnit.SECONDS));
+
+        mailbox.setActive(false);
+        consumer.join(5000);
+        assertEquals(Collections.singletonList("returned"), recycled);
+    }
+
+    @Test
+    public void runLoopContinuesAfterConsumerError() throws InterruptedException {
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch consumedGoodFrame = new CountDownLatch(1);
+        mailbox.setActive(true);
+        Thread consumer = new Thread(() -> mailbox.runLoop(frame -> {
+            if (frame.equals("bad")) {
+                throw new IllegalStateException(frame);
+            }
+            consumedGoodFrame.countDown();
+            return false;
+        }, errors::add));
+        consumer.start();
+
+        mailbox.offer("bad");
+        waitUntilTaken();
+        mailbox.offer("good");
+        assertTrue(consumedGoodFrame.await(5, TimeUnit.SECONDS));
+
+        mailbox.setActive(false);
+        consumer.join(5000);
+        assertEquals(1, errors.size());
+        assertTrue(recycled.contains("bad"));
+        assertTrue(recycled.contains("good"));
+    }
+
+    @Test
+    public void deactivatingUnparksWaitingConsumer() throws InterruptedException {
+        mailbox.setActive(true);
+        CountDownLatch terminated = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            mailbox.runLoop(frame -> false, e -> {
+            });
+            terminated.countDown();
+        });
+        consumer.start();
+
+        waitUntilParked(consumer);
+        mailbox.setActive(false);
+
+        assertTrue(terminated.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void interruptTerminatesWaitingConsumer() throws InterruptedException {
+        mailbox.setActive(true);
+        CountDownLatch terminated = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            if (mailbox.take() == null) {
+                terminated.countDown();
+            }
+        });
+        consumer.start();
+
+        waitUntilParked(consumer);
+        consumer.interrupt();
+
+        assertTrue(terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(mailbox.isActive());
+    }
+
+    /**
+     * Waits until the pending frame was picked up, so that the next offer does not replace it.
+     */
+    private void waitUntilTaken() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailbox.hasPendingFrame() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
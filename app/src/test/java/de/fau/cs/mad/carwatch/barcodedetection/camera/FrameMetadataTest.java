@@ -0,0 +1,87 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FrameMetadataTest {
+
+    private static final float DELTA = 1e-3f;
+
+    // Landscape sensor frame, as delivered by the back camera of most phones.
+    private static final int SENSOR_WIDTH = 640;
+    private static final int SENSOR_HEIGHT = 480;
+
+    @Test
+    public void uprightSizeKeepsSensorSizeWithoutRotation() {
+        for (int rotation : new int[]{0, 180}) {
+            FrameMetadata metadata = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, rotation);
+            assertEquals("rotation " + rotation, SENSOR_WIDTH, metadata.uprightWidth);
+            assertEquals("rotation " + rotation, SENSOR_HEIGHT, metadata.uprightHeight);
+        }
+    }
+
+    @Test
+    public void uprightSizeSwapsSensorSizeForQuarterRotations() {
+        for (int rotation : new int[]{90, 270}) {
+            FrameMetadata metadata = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, rotation);
+            assertEquals("rotation " + rotation, SENSOR_HEIGHT, metadata.uprightWidth);
+            assertEquals("rotation " + rotation, SENSOR_WIDTH, metadata.uprightHeight);
+        }
+    }
+
+    @Test
+    public void mapsUprightCornersToViewCornersForAllRotations() {
+        int viewWidth = 1080;
+        int viewHeight = 1920;
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            FrameMetadata metadata = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, rotation);
+            String message = "rotation " + rotation;
+
+            assertEquals(message, 0, metadata.toViewX(0, viewWidth), DELTA);
+            assertEquals(message, 0, metadata.toViewY(0, viewHeight), DELTA);
+            assertEquals(message, viewWidth, metadata.toViewX(metadata.uprightWidth, viewWidth), DELTA);
+            assertEquals(message, viewHeight, metadata.toViewY(metadata.uprightHeight, viewHeight), DELTA);
+            // the center of the upright frame is the center of the view
+            assertEquals(message, viewWidth / 2f, metadata.toViewX(metadata.uprightWidth / 2f, viewWidth), DELTA);
+            assertEquals(message, viewHeight / 2f, metadata.toViewY(metadata.uprightHeight / 2f, viewHeight), DELTA);
+        }
+    }
+
+    @Test
+    public void scalesPortraitFrameByUprightSize() {
+        // Upright, the 640x480 sensor frame is 480x640, so a view of 960x1280 scales it by 2.
+        FrameMetadata metadata = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, 90);
+        assertEquals(200, metadata.toViewX(100, 960), DELTA);
+        assertEquals(600, metadata.toViewY(300, 1280), DELTA);
+    }
+
+    @Test
+    public void mirrorsHorizontallyOnly() {
+        int viewWidth = 960;
+        int viewHeight = 1280;
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            FrameMetadata metadata = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, rotation, true);
+            FrameMetadata unmirrored = new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, rotation);
+            String message = "rotation " + rotation;
+
+            assertEquals(message, viewWidth, metadata.toViewX(0, viewWidth), DELTA);
+            assertEquals(message, 0, metadata.toViewX(metadata.uprightWidth, viewWidth), DELTA);
+            float x = metadata.uprightWidth / 4f;
+            assertEquals(message, viewWidth - unmirrored.toViewX(x, viewWidth), metadata.toViewX(x, viewWidth), DELTA);
+            float y = metadata.uprightHeight / 4f;
+            assertEquals(message, unmirrored.toViewY(y, viewHeight), metadata.toViewY(y, viewHeight), DELTA);
+        }
+    }
+
+    @Test
+    public void defaultsToNotMirrored() {
+        assertFalse(new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, 0).mirrored);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRotation() {
+        new FrameMetadata(SENSOR_WIDTH, SENSOR_HEIGHT, 45);
+    }
+}
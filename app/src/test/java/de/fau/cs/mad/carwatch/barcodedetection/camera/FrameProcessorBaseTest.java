@@ -0,0 +1,159 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that frame buffers are only released once no detection reads them anymore.
+ */
+public class FrameProcessorBaseTest {
+
+    private static final FrameMetadata METADATA = new FrameMetadata(4, 2, 0);
+
+    private List<ByteBuffer> released;
+    private TestProcessor processor;
+
+    @Before
+    public void setUp() {
+        released = Collections.synchronizedList(new ArrayList<>());
+        processor = new TestProcessor();
+    }
+
+    @Test
+    public void releasesFrameWhenDetectionCompletes() {
+        ByteBuffer frame = newFrame();
+        processor.process(frame, METADATA, null, released::add);
+
+        assertEquals(1, processor.detections.size());
+        assertTrue(released.isEmpty());
+
+        processor.detections.get(0).setResult("result");
+        assertEquals(Collections.singletonList(frame), released);
+        assertEquals(Collections.singletonList("result"), processor.results);
+    }
+
+    @Test
+    public void releasesFrameWhenDetectionFails() {
+        ByteBuffer frame = newFrame();
+        processor.process(frame, METADATA, null, released::add);
+
+        processor.detections.get(0).setException(new IllegalStateException());
+        assertEquals(Collections.singletonList(frame), released);
+        assertEquals(1, processor.failures);
+    }
+
+    @Test
+    public void releasesFrameWhenDetectorThrows() {
+        processor.throwOnDetect = true;
+        ByteBuffer frame = newFrame();
+        processor.process(frame, METADATA, null, released::add);
+
+        assertEquals(Collections.singletonList(frame), released);
+        assertEquals(1, processor.failures);
+    }
+
+    @Test
+    public void releasesReplacedPendingFrameRightAway() {
+        ByteBuffer inFlight1 = newFrame();
+        ByteBuffer inFlight2 = newFrame();
+        ByteBuffer replaced = newFrame();
+        ByteBuffer pending = newFrame();
+        processor.process(inFlight1, METADATA, null, released::add);
+        processor.process(inFlight2, METADATA, null, released::add);
+        processor.process(replaced, METADATA, null, released::add);
+        processor.process(pending, METADATA, null, released::add);
+
+        // Both slots are taken, so only the replaced frame is no longer needed.
+        assertEquals(2, processor.detections.size());
+        assertEquals(Collections.singletonList(replaced), released);
+
+        // Completing a detection releases its frame and starts the pending one.
+        processor.detections.get(0).setResult("first");
+        assertEquals(3, processor.detections.size());
+        assertEquals(2, released.size());
+        assertTrue(released.get(1) == inFlight1);
+
+        processor.detections.get(1).setResult("second");
+        processor.detections.get(2).setResult("third");
+        assertEquals(4, released.size());
+        assertTrue(released.get(2) == inFlight2);
+        assertTrue(released.get(3) == pending);
+    }
+
+    @Test
+    public void dropPendingFrameReleasesIt() {
+        ByteBuffer inFlight1 = newFrame();
+        ByteBuffer inFlight2 = newFrame();
+        ByteBuffer pending = newFrame();
+        processor.process(inFlight1, METADATA, null, released::add);
+        processor.process(inFlight2, METADATA, null, released::add);
+        processor.process(pending, METADATA, null, released::add);
+
+        processor.dropPendingFrame();
+        assertEquals(1, released.size());
+        assertTrue(released.get(0) == pending);
+
+        processor.detections.get(0).setResult("first");
+        processor.detections.get(1).setResult("second");
+        assertEquals(3, released.size());
+        // No detection was started for the dropped frame.
+        assertEquals(2, processor.detections.size());
+    }
+
+    private static ByteBuffer newFrame() {
+        return ByteBuffer.wrap(new byte[METADATA.width * METADATA.height * 3 / 2]);
+    }
+
+    private static class TestProcessor extends FrameProcessorBase<String> {
+
+        final List<TaskCompletionSource<String>> detections = new ArrayList<>();
+        final List<String> results = new ArrayList<>();
+        boolean throwOnDetect;
+        int failures;
+
+        TestProcessor() {
+            super(MAX_FRAMES_IN_FLIGHT);
+        }
+
+        @Override
+        protected Task<String> detectInFrame(ByteBuffer data, FrameMetadata frameMetadata) {
+            if (throwOnDetect) {
+                throw new IllegalStateException();
+            }
+            TaskCompletionSource<String> detection = new TaskCompletionSource<>();
+            detections.add(detection);
+            return detection.getTask();
+        }
+
+        @Override
+        protected Executor getResultExecutor() {
+            return Runnable::run;
+        }
+
+        @Override
+        protected void onSuccess(FrameMetadata frameMetadata, String results, GraphicOverlay graphicOverlay) {
+            this.results.add(results);
+        }
+
+        @Override
+        protected void onFailure(Exception e) {
+            failures++;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
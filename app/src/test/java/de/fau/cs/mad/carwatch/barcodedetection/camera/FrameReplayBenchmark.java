@@ -0,0 +1,164 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.fau.cs.mad.carwatch.barcodedetection.DetectedBarcode;
+import de.fau.cs.mad.carwatch.barcodedetection.Detector;
+import de.fau.cs.mad.carwatch.barcodedetection.Ean8Detector;
+import de.fau.cs.mad.carwatch.barcodedetection.Ean8TestFrames;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays frame recordings through the EAN-8 detector, once frame by frame and once through a
+ * {@link FrameProcessorBase} as the camera would feed it, and prints the {@link
+ * FrameReplaySource.Report reports} to stdout. ML Kit is not available on the JVM, so only the
+ * scanline decoder is measured.
+ *
+ * <p>A synthetic recording is always replayed. Recordings of real scans (see {@code
+ * BuildConfig.RECORD_SCAN_FRAMES}) are replayed from the directory given by the {@code
+ * carwatch.replayDir} system property, e.g. {@code ./gradlew testDebugUnitTest
+ * -PreplayDir=/path/to/recordings}.
+ */
+public class FrameReplayBenchmark {
+
+    private static final String REPLAY_DIR_PROPERTY = "carwatch.replayDir";
+    private static final String RECORDING_EXTENSION = ".frames";
+
+    private static final int NUM_BLANK_FRAMES = 30;
+    private static final int NUM_BARCODE_FRAMES = 60;
+
+    @Test
+    public void replaySyntheticRecording() throws IOException, InterruptedException {
+        File recording = File.createTempFile("synthetic", RECORDING_EXTENSION);
+        recording.deleteOnExit();
+        writeSyntheticRecording(recording);
+
+        FrameReplaySource.Report detectorReport = replayDetector(recording);
+        assertEquals(NUM_BLANK_FRAMES + NUM_BARCODE_FRAMES, detectorReport.getNumFrames());
+        assertEquals(NUM_BARCODE_FRAMES, detectorReport.getNumDecoded());
+        assertEquals(NUM_BLANK_FRAMES, detectorReport.getFirstDecodedFrame());
+        assertEquals(0, detectorReport.getNumErrors());
+
+        FrameReplaySource.Report processorReport = replayProcessor(recording);
+        // Every frame is either detected or skipped, and only barcode frames are decoded.
+        assertEquals(NUM_BLANK_FRAMES + NUM_BARCODE_FRAMES,
+                processorReport.getNumFrames() + processorReport.getNumSkipped());
+        assertTrue(processorReport.getNumDecoded() > 0);
+        assertTrue(processorReport.getFirstDecodedFrame() >= NUM_BLANK_FRAMES);
+        assertEquals(0, processorReport.getNumErrors());
+    }
+
+    @Test
+    public void replayRecordedScans() throws IOException, InterruptedException {
+        String replayDir = System.getProperty(REPLAY_DIR_PROPERTY);
+        if (replayDir == null) {
+            System.out.println("No recordings replayed, set " + REPLAY_DIR_PROPERTY + " to replay them.");
+            return;
+        }
+        File[] recordings = new File(replayDir).listFiles((dir, name) -> name.endsWith(RECORDING_EXTENSION));
+        if (recordings == null || recordings.length == 0) {
+            System.out.println("No recordings found in " + replayDir);
+            return;
+        }
+        Arrays.sort(recordings);
+        for (File recording : recordings) {
+            replayDetector(recording);
+            replayProcessor(recording);
+        }
+    }
+
+    private static FrameReplaySource.Report replayDetector(File recording) throws IOException, InterruptedException {
+        FrameReplaySource.Report report = new FrameReplaySource(recording, false).replay(createDetector());
+        System.out.println(recording.getName() + " (detector): " + report);
+        return report;
+    }
+
+    private static FrameReplaySource.Report replayProcessor(File recording) throws IOException, InterruptedException {
+        ReplayProcessor processor = new ReplayProcessor(createDetector());
+        FrameReplaySource.Report report = new FrameReplaySource(recording, true).replay(processor, null);
+        System.out.println(recording.getName() + " (processor): " + report);
+        return report;
+    }
+
+    private static Detector createDetector() {
+        return new Ean8Detector(new Detector() {
+            @Override
+            public Task<List<DetectedBarcode>> detect(ByteBuffer data, FrameMetadata frameMetadata) {
+                return Tasks.forResult(Collections.emptyList());
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    /**
+     * Writes blank frames followed by frames showing a barcode, 30 frames per second.
+     */
+    private static void writeSyntheticRecording(File file) throws IOException {
+        byte[] blank = Ean8TestFrames.blank();
+        byte[] barcode = Ean8TestFrames.render(Ean8TestFrames.modules(Ean8TestFrames.withCheckDigit("9638507")), false);
+        try (DataOutputStream outputStream =
+                     new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outputStream.writeInt(FrameRecorder.MAGIC);
+            outputStream.writeInt(FrameRecorder.VERSION);
+            for (int i = 0; i < NUM_BLANK_FRAMES + NUM_BARCODE_FRAMES; i++) {
+                byte[] data = i < NUM_BLANK_FRAMES ? blank : barcode;
+                outputStream.writeLong(i * 33_333_333L);
+                outputStream.writeInt(Ean8TestFrames.WIDTH);
+                outputStream.writeInt(Ean8TestFrames.HEIGHT);
+                outputStream.writeInt(0);
+                outputStream.writeInt(data.length);
+                outputStream.write(data);
+            }
+        }
+    }
+
+    /**
+     * Runs the detector with the same frame handling as the barcode scanner, without touching the
+     * UI.
+     */
+    private static class ReplayProcessor extends FrameProcessorBase<List<DetectedBarcode>> {
+
+        private final Detector detector;
+
+        ReplayProcessor(Detector detector) {
+            super(MAX_FRAMES_IN_FLIGHT);
+            this.detector = detector;
+        }
+
+        @Override
+        protected Task<List<DetectedBarcode>> detectInFrame(ByteBuffer data, FrameMetadata frameMetadata) {
+            return detector.detect(data, frameMetadata);
+        }
+
+        @Override
+        protected void onSuccess(FrameMetadata frameMetadata, List<DetectedBarcode> results, GraphicOverlay graphicOverlay) {
+        }
+
+        @Override
+        protected void onFailure(Exception e) {
+        }
+
+        @Override
+        public void stop() {
+            detector.close();
+        }
+    }
+}
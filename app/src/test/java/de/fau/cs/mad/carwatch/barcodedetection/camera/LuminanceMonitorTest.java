@@ -0,0 +1,114 @@
+package de.fau.cs.mad.carwatch.barcodedetection.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class LuminanceMonitorTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static final ByteBuffer DARK = frame(20);
+    private static final ByteBuffer MEDIUM = frame(90);
+    private static final ByteBuffer BRIGHT = frame(200);
+
+    @Test
+    public void meanLuminanceIgnoresChromaPlane() {
+        // NV21: the luma plane is followed by half as many bytes of chroma
+        ByteBuffer data = ByteBuffer.allocate(WIDTH * HEIGHT * 3 / 2);
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) (i < WIDTH * HEIGHT ? 100 : 255));
+        }
+        assertEquals(100, LuminanceMonitor.meanLuminance(data, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void raisesExposureThenTorchForDarkScene() {
+        LuminanceMonitor monitor = new LuminanceMonitor(LuminanceMonitor.LEVEL_TORCH);
+
+        feed(monitor, DARK, LuminanceMonitor.NUM_FRAMES_FOR_DECISION - 1);
+        assertEquals(LuminanceMonitor.LEVEL_NONE, monitor.getLevel());
+        assertEquals(LuminanceMonitor.LEVEL_EXPOSURE, update(monitor, DARK));
+        assertEquals(LuminanceMonitor.NUM_FRAMES_FOR_DECISION, monitor.getExposureFrame());
+
+        // the dark frames are counted again after the exposure was raised
+        feed(monitor, DARK, LuminanceMonitor.NUM_FRAMES_FOR_DECISION - 1);
+        assertEquals(LuminanceMonitor.LEVEL_EXPOSURE, monitor.getLevel());
+        assertEquals(LuminanceMonitor.LEVEL_TORCH, update(monitor, DARK));
+        assertEquals(2 * LuminanceMonitor.NUM_FRAMES_FOR_DECISION, monitor.getTorchFrame());
+
+        feed(monitor, DARK, 3 * LuminanceMonitor.NUM_FRAMES_FOR_DECISION);
+        assertEquals(LuminanceMonitor.LEVEL_TORCH, monitor.getLevel());
+    }
+
+    @Test
+    public void nonDarkFrameResetsDarkCount() {
+        LuminanceMonitor monitor = new LuminanceMonitor(LuminanceMonitor.LEVEL_TORCH);
+        for (int i = 0; i < 4; i++) {
+            feed(monitor, DARK, LuminanceMonitor.NUM_FRAMES_FOR_DECISION - 1);
+            update(monitor, MEDIUM);
+        }
+        assertEquals(LuminanceMonitor.LEVEL_NONE, monitor.getLevel());
+        assertEquals(-1, monitor.getExposureFrame());
+    }
+
+    @Test
+    public void keepsExposureWhenCompensatedSceneReadsBright() {
+        LuminanceMonitor monitor = new LuminanceMonitor(LuminanceMonitor.LEVEL_TORCH);
+        feed(monitor, DARK, LuminanceMonitor.NUM_FRAMES_FOR_DECISION);
+        assertEquals(LuminanceMonitor.LEVEL_EXPOSURE, monitor.getLevel());
+
+        // brightened by the raised exposure, which must not be dropped and raised again
+        feed(monitor, BRIGHT, 10 * LuminanceMonitor.NUM_FRAMES_FOR_DECISION);
+        assertEquals(LuminanceMonitor.LEVEL_EXPOSURE, monitor.getLevel());
+        assertEquals(LuminanceMonitor.NUM_FRAMES_FOR_DECISION, monitor.getExposureFrame());
+        assertEquals(-1, monitor.getTorchFrame());
+    }
+
+    @Test
+    public void staysWithinMaxLevel() {
+        LuminanceMonitor monitor = new LuminanceMonitor(LuminanceMonitor.LEVEL_EXPOSURE);
+        feed(monitor, DARK, 10 * LuminanceMonitor.NUM_FRAMES_FOR_DECISION);
+        assertEquals(LuminanceMonitor.LEVEL_EXPOSURE, monitor.getLevel());
+        assertEquals(-1, monitor.getTorchFrame());
+
+        LuminanceMonitor noCompensation = new LuminanceMonitor(LuminanceMonitor.LEVEL_NONE);
+        feed(noCompensation, DARK, 10 * LuminanceMonitor.NUM_FRAMES_FOR_DECISION);
+        assertEquals(LuminanceMonitor.LEVEL_NONE, noCompensation.getLevel());
+    }
+
+    @Test
+    public void summarizesSession() {
+        LuminanceMonitor monitor = new LuminanceMonitor(LuminanceMonitor.LEVEL_TORCH);
+        assertEquals(0, monitor.getMeanLuminance());
+        assertEquals(0, monitor.getMinLuminance());
+
+        update(monitor, DARK);
+        update(monitor, BRIGHT);
+        assertEquals(2, monitor.getNumFrames());
+        assertEquals(110, monitor.getMeanLuminance());
+        assertEquals(20, monitor.getMinLuminance());
+        assertEquals(200, monitor.getLastLuminance());
+    }
+
+    private static int update(LuminanceMonitor monitor, ByteBuffer frame) {
+        return monitor.update(frame, WIDTH, HEIGHT);
+    }
+
+    private static void feed(LuminanceMonitor monitor, ByteBuffer frame, int numFrames) {
+        for (int i = 0; i < numFrames; i++) {
+            update(monitor, frame);
+        }
+    }
+
+    private static ByteBuffer frame(int luminance) {
+        ByteBuffer data = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) luminance);
+        }
+        return data;
+    }
+}